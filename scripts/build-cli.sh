@@ -0,0 +1,77 @@
+#!/usr/bin/env bash
+#
+# Builds the command line distribution into out/cli:
+#
+#   qr.jar     the application
+#   qr.jsa     AppCDS archive recorded from a training run over every output format
+#   qr         launcher using the archive
+#   qr-native  native executable, when GraalVM's native-image is on the PATH
+#
+# Startup is measured for each variant and written to out/cli/startup.txt.
+#
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+JAVA_BIN="${JAVA_HOME:+$JAVA_HOME/bin/}"
+OUT=out/cli
+RUNS=${STARTUP_RUNS:-20}
+PAYLOAD="https://example.com/products/12345?ref=label"
+
+# Flags shared by the training run and the launcher; the archive is only usable with
+# matching settings.
+JVM_FLAGS=(-XX:TieredStopAtLevel=1 -XX:+UseSerialGC -Djava.awt.headless=true)
+
+rm -rf "$OUT"
+mkdir -p "$OUT/classes" "$OUT/training"
+
+"${JAVA_BIN}javac" -d "$OUT/classes" $(find src -name '*.java')
+cp -R src/META-INF "$OUT/classes/"
+"${JAVA_BIN}jar" --create --file "$OUT/qr.jar" --main-class Main -C "$OUT/classes" .
+
+train() {
+  for format in pbm bmp tiff png; do
+    "$@" --format "$format" --output "$OUT/training/qr.$format" "$PAYLOAD"
+  done
+}
+
+echo "Recording class list"
+train "${JAVA_BIN}java" -XX:ArchiveClassesAtExit="$OUT/qr.jsa" "${JVM_FLAGS[@]}" -jar "$OUT/qr.jar"
+
+cat > "$OUT/qr" <<'EOF'
+#!/bin/sh
+DIR=$(cd "$(dirname "$0")" && pwd)
+exec "${JAVA_HOME:+$JAVA_HOME/bin/}java" -XX:SharedArchiveFile="$DIR/qr.jsa" -XX:TieredStopAtLevel=1 -XX:+UseSerialGC -Djava.awt.headless=true -jar "$DIR/qr.jar" "$@"
+EOF
+chmod +x "$OUT/qr"
+
+if command -v native-image > /dev/null; then
+  echo "Building native image"
+  # The tracing agent picks up what the PNG path needs from AWT on top of the shipped config
+  train "${JAVA_BIN}java" -agentlib:native-image-agent=config-output-dir="$OUT/native-config" -Djava.awt.headless=true -jar "$OUT/qr.jar"
+  native-image -H:ConfigurationFileDirectories="$OUT/native-config" -jar "$OUT/qr.jar" -o "$OUT/qr-native"
+fi
+
+# Prints the mean wall-clock milliseconds of $RUNS invocations
+measure() {
+  local start end
+  start=$(date +%s%N)
+  for _ in $(seq "$RUNS"); do "$@" > /dev/null; done
+  end=$(date +%s%N)
+  echo $(((end - start) / RUNS / 1000000))
+}
+
+{
+  printf '%-12s %8s %8s\n' variant pbm png
+  for variant in jar archive native; do
+    case $variant in
+      jar) command=("${JAVA_BIN}java" -Xshare:off "${JVM_FLAGS[@]}" -jar "$OUT/qr.jar") ;;
+      archive) command=("$OUT/qr") ;;
+      native) [ -x "$OUT/qr-native" ] || continue; command=("$OUT/qr-native") ;;
+    esac
+
+    printf '%-12s %6sms %6sms\n' "$variant" \
+      "$(measure "${command[@]}" --format pbm --output "$OUT/training/measure.pbm" "$PAYLOAD")" \
+      "$(measure "${command[@]}" --format png --output "$OUT/training/measure.png" "$PAYLOAD")"
+  done
+} | tee "$OUT/startup.txt"
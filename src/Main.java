@@ -1,23 +1,77 @@
-import qr.MaskPattern;
+import qr.BitmapExporter;
+import qr.EncodedSymbol;
 import qr.ErrorCorrection;
-import qr.QRCodeBuilder;
+import qr.MaskPattern;
 
-import javax.imageio.ImageIO;
-import java.awt.*;
-import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Locale;
 
+/**
+ * Command line entry point.
+ * <pre>
+ * qr [--format png|pbm|bmp|tiff] [--module-size n] [--error-correction level]
+ *    [--mask pattern] [--output file] &lt;data | -&gt;
+ * </pre>
+ * Passing {@code -} as data reads it from standard input.
+ * <p>
+ * Only PNG output touches AWT; the 1-bit formats are written straight from the module matrix,
+ * so they run without loading {@code java.desktop} at all. Keep AWT types out of this class
+ * for that reason; PNG output lives in {@link PngOutput}.
+ */
 public class Main {
   public static void main(String[] args) throws IOException {
+    String format = "png";
+    String output = null;
+    String data = null;
+    int moduleSize = 20;
+    var errorCorrection = ErrorCorrection.LOW;
+    var maskPattern = MaskPattern.MASK0;
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        switch (args[i]) {
+          case "--format" -> format = args[++i].toLowerCase(Locale.ROOT);
+          case "--output" -> output = args[++i];
+          case "--module-size" -> moduleSize = Integer.parseInt(args[++i]);
+          case "--error-correction" -> errorCorrection = ErrorCorrection.valueOf(args[++i].toUpperCase(Locale.ROOT));
+          case "--mask" -> maskPattern = MaskPattern.valueOf(args[++i].toUpperCase(Locale.ROOT));
+          default -> {
+            if (data != null) throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            data = args[i];
+          }
+        }
+      }
+    } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+      usage(e.getMessage());
+      return;
+    }
+
+    if (data == null) {
+      usage("No data given");
+      return;
+    }
 
-    var qr = new QRCodeBuilder()
-        .setErrorCorrection(ErrorCorrection.LOW)
-        .setMaskPattern(MaskPattern.MASK0)
-        .setBackgroundColor(Color.WHITE)
-        .setModuleSize(20)
-        .setData("https://google.com")
-        .build();
+    if (data.equals("-")) {
+      data = new String(System.in.readAllBytes(), StandardCharsets.UTF_8).stripTrailing();
+    }
+
+    var symbol = EncodedSymbol.encode(data, errorCorrection, maskPattern);
+    var path = Path.of(output != null ? output : "qr-code." + format);
+
+    switch (format) {
+      case "png" -> PngOutput.write(symbol, moduleSize, path);
+      case "pbm" -> BitmapExporter.writePbm(symbol, moduleSize, path);
+      case "bmp" -> BitmapExporter.writeBmp(symbol, moduleSize, path);
+      case "tif", "tiff" -> BitmapExporter.writeTiff(symbol, moduleSize, path);
+      default -> usage("Unknown format: " + format);
+    }
+  }
 
-    ImageIO.write(qr.getImage(), "PNG", new File("qr-code.png"));
+  private static void usage(String error) {
+    System.err.println(error);
+    System.err.println("usage: qr [--format png|pbm|bmp|tiff] [--module-size n] [--error-correction level] [--mask pattern] [--output file] <data | ->");
+    System.exit(2);
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,23 @@
+import qr.EncodedSymbol;
+import qr.RenderStyle;
+import qr.SymbolRenderer;
+
+import javax.imageio.ImageIO;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * PNG output of the command line tool, kept apart from {@link Main} so that AWT and ImageIO
+ * are only loaded when a PNG is actually requested.
+ */
+final class PngOutput {
+
+  private PngOutput() {
+  }
+
+  static void write(EncodedSymbol symbol, int moduleSize, Path path) throws IOException {
+    var image = SymbolRenderer.render(symbol, RenderStyle.defaults().withModuleSize(moduleSize));
+
+    ImageIO.write(image, "PNG", path.toFile());
+  }
+}
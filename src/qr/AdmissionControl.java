@@ -0,0 +1,150 @@
+package qr;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * Bounds the amount of asynchronous generation work in progress.
+ * <p>
+ * At most {@code maxRunning} tasks are handed to the executor at once. Further tasks are
+ * delayed in a queue of at most {@code maxWaiting} entries and dispatched as running tasks
+ * finish. Tasks arriving while the queue is full are rejected: their future completes
+ * exceptionally with a {@link RejectedExecutionException} instead of piling up.
+ * <p>
+ * One instance is meant to be shared by every builder feeding the same executor.
+ */
+public final class AdmissionControl {
+
+  private static final AdmissionControl DEFAULT = new AdmissionControl(Runtime.getRuntime().availableProcessors(), 256);
+
+  private final int maxRunning;
+  private final int maxWaiting;
+  private final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+  private int running;
+
+  // Slots freed but not yet handed over, and whether a thread is handing them over
+  private int releasing;
+  private boolean draining;
+
+  /**
+   * @param maxRunning the number of tasks allowed on the executor at once; must be above 0
+   * @param maxWaiting the number of tasks allowed to wait for a running slot; may be 0 to
+   *                   reject as soon as all slots are taken
+   */
+  public AdmissionControl(int maxRunning, int maxWaiting) {
+    if (maxRunning < 1) throw new IllegalArgumentException("Running task limit must be above 0");
+    if (maxWaiting < 0) throw new IllegalArgumentException("Waiting task limit cannot be negative");
+
+    this.maxRunning = maxRunning;
+    this.maxWaiting = maxWaiting;
+  }
+
+  /**
+   * @return the instance used by builders that were not given one; allows one running
+   * task per available processor and 256 waiting tasks
+   */
+  public static AdmissionControl defaults() {
+    return DEFAULT;
+  }
+
+  /**
+   * Admits a task and runs it on the given executor once a slot is free.
+   * <p>
+   * The task receives its own future, so it can check {@link CompletableFuture#isDone()}
+   * between stages and stop early once the future has been cancelled. Its return value
+   * completes the future; exceptions it throws complete the future exceptionally.
+   *
+   * @param executor the executor to run the task on
+   * @param task     the work to run
+   * @return a future for the task's result
+   */
+  public <T> CompletableFuture<T> submit(Executor executor, Function<CompletableFuture<T>, T> task) {
+    var future = new CompletableFuture<T>();
+    Runnable dispatch = () -> dispatch(executor, future, task);
+
+    synchronized (this) {
+      if (running < maxRunning) {
+        running++;
+      } else if (waiting.size() < maxWaiting) {
+        waiting.add(dispatch);
+        future.whenComplete((result, error) -> dequeue(dispatch));
+        return future;
+      } else {
+        future.completeExceptionally(new RejectedExecutionException(
+            "Generation rejected; " + maxRunning + " tasks running and " + maxWaiting + " waiting"));
+        return future;
+      }
+    }
+
+    dispatch.run();
+    return future;
+  }
+
+  public synchronized int getRunningCount() {
+    return this.running;
+  }
+
+  public synchronized int getWaitingCount() {
+    return this.waiting.size();
+  }
+
+  private <T> void dispatch(Executor executor, CompletableFuture<T> future, Function<CompletableFuture<T>, T> task) {
+    try {
+      executor.execute(() -> {
+        try {
+          if (!future.isDone()) future.complete(task.apply(future));
+        } catch (Throwable error) {
+          future.completeExceptionally(error);
+        } finally {
+          release();
+        }
+      });
+    } catch (RejectedExecutionException error) {
+      future.completeExceptionally(error);
+      release();
+    }
+  }
+
+  private synchronized void dequeue(Runnable dispatch) {
+    this.waiting.remove(dispatch);
+  }
+
+  /**
+   * Frees a running slot by handing it to the next waiting task, or giving it back when no
+   * task waits. Hand-overs run in a loop on whichever thread is already draining: with a
+   * direct executor, a task finishing inside a hand-over would otherwise recurse once per
+   * waiting task.
+   */
+  private void release() {
+    synchronized (this) {
+      releasing++;
+      if (draining) return;
+      draining = true;
+    }
+
+    while (true) {
+      Runnable next;
+
+      synchronized (this) {
+        if (releasing == 0) {
+          draining = false;
+          return;
+        }
+
+        releasing--;
+        next = waiting.poll();
+
+        if (next == null) {
+          running--;
+          continue;
+        }
+      }
+
+      // The slot is handed over to the next waiting task rather than given back
+      next.run();
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package qr;
+
+import java.io.ByteArrayOutputStream;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Plan for encoding binary data, such as a signed token, in the smallest symbol possible.
+ * <p>
+ * Each allowed {@link Representation} is sized for every version, smallest first; the first
+ * version any of them fits in wins, with the representation taking the fewest bits there.
+ * Which representation was chosen is not recorded in the symbol itself, so only allow several
+ * when the reading side can tell them apart, for example by a marker or signature in the
+ * payload itself. By default the payload is planned as plain Base45, which any reader decodes.
+ *
+ * <pre>
+ * var symbol = BinaryPayload.plan(token, ErrorCorrection.MEDIUM).encode(MaskPattern.MASK0);
+ * </pre>
+ */
+public final class BinaryPayload {
+
+  public enum Representation {
+    /**
+     * The bytes as they are, in byte mode. The densest option for readers that hand out
+     * raw bytes, but many scanners only deliver text.
+     */
+    BYTES,
+
+    /**
+     * Base45 text in alphanumeric mode; readable by any scanner.
+     */
+    BASE45,
+
+    /**
+     * Raw deflate (RFC 1951, no zlib header) followed by Base45, in alphanumeric mode. Only
+     * for readers that know to inflate the decoded bytes; never chosen unless allowed.
+     */
+    DEFLATED_BASE45
+  }
+
+  private final Representation representation;
+  private final byte[] content;
+  private final int version;
+  private final ErrorCorrection errorCorrection;
+  private final int bitLength;
+
+  private BinaryPayload(Representation representation, byte[] content, int version, ErrorCorrection errorCorrection, int bitLength) {
+    this.representation = representation;
+    this.content = content;
+    this.version = version;
+    this.errorCorrection = errorCorrection;
+    this.bitLength = bitLength;
+  }
+
+  /**
+   * Plans the payload as Base45 text. To also consider deflating it first, allow
+   * {@link Representation#DEFLATED_BASE45} explicitly.
+   *
+   * @see #plan(byte[], ErrorCorrection, Set)
+   */
+  public static BinaryPayload plan(byte[] payload, ErrorCorrection errorCorrection) {
+    return plan(payload, errorCorrection, EnumSet.of(Representation.BASE45));
+  }
+
+  /**
+   * Plans the payload in whichever of the allowed representations yields the smallest symbol.
+   *
+   * @param payload         the data to encode; not retained
+   * @param errorCorrection the error correction level to plan for
+   * @param allowed         the representations the reading side understands; cannot be empty
+   * @throws IllegalArgumentException if no allowed representation fits in the highest supported version
+   */
+  public static BinaryPayload plan(byte[] payload, ErrorCorrection errorCorrection, Set<Representation> allowed) {
+    if (allowed.isEmpty()) throw new IllegalArgumentException("At least one representation must be allowed");
+
+    var candidates = new Representation[allowed.size()];
+    var contents = new byte[candidates.length][];
+    int count = 0;
+
+    for (var representation : allowed) {
+      candidates[count] = representation;
+      contents[count++] = representation == Representation.DEFLATED_BASE45 ? deflate(payload) : payload.clone();
+    }
+
+    for (int version = 1; version <= Encoder.VERSION_EC_CAPACITY_MAPPING.length; version++) {
+      int capacityBits = Encoder.getDataCodewords(version, errorCorrection) * 8;
+      int best = -1, bestBits = Integer.MAX_VALUE;
+
+      for (int i = 0; i < count; i++) {
+        int bits = getBitLength(candidates[i], contents[i].length, version);
+
+        if (bits >= 0 && bits <= capacityBits && bits < bestBits) {
+          best = i;
+          bestBits = bits;
+        }
+      }
+
+      if (best >= 0) return new BinaryPayload(candidates[best], contents[best], version, errorCorrection, bestBits);
+    }
+
+    throw new IllegalArgumentException("Payload of " + payload.length + " bytes does not fit in the highest supported version");
+  }
+
+  /**
+   * @return the number of bits the segment takes in the given version, or -1 if its length
+   * cannot be expressed there
+   */
+  private static int getBitLength(Representation representation, int contentLength, int version) {
+    return switch (representation) {
+      case BYTES -> Encoder.getByteSegmentBits(contentLength, version);
+      case BASE45, DEFLATED_BASE45 -> Encoder.getAlphaNumericSegmentBits(Base45.getEncodedLength(contentLength), version);
+    };
+  }
+
+  private static byte[] deflate(byte[] payload) {
+    var deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+    var output = new ByteArrayOutputStream(payload.length + 16);
+    var chunk = new byte[512];
+
+    try {
+      deflater.setInput(payload);
+      deflater.finish();
+
+      while (!deflater.finished()) {
+        output.write(chunk, 0, deflater.deflate(chunk));
+      }
+    } finally {
+      deflater.end();
+    }
+
+    return output.toByteArray();
+  }
+
+  /**
+   * Lays the planned payload out into a symbol.
+   *
+   * @param maskPattern the mask pattern to apply to the data modules
+   */
+  public EncodedSymbol encode(MaskPattern maskPattern) {
+    byte[] segment = representation == Representation.BYTES
+        ? Encoder.encodeBytes(content, version)
+        : Encoder.encodeAlphaNumeric(Base45.encode(content), version);
+
+    var codewords = new byte[Encoder.getEncodedLength(version, errorCorrection)];
+    int length = Encoder.finish(segment, version, errorCorrection, codewords);
+
+    return EncodedSymbol.fromCodewords(codewords, length, version, errorCorrection, maskPattern);
+  }
+
+  public Representation getRepresentation() {
+    return this.representation;
+  }
+
+  /**
+   * @return the text carried by the symbol for the Base45 representations, or null for {@link Representation#BYTES}
+   */
+  public String getText() {
+    return this.representation == Representation.BYTES ? null : Base45.encode(this.content);
+  }
+
+  public int getVersion() {
+    return this.version;
+  }
+
+  public ErrorCorrection getErrorCorrection() {
+    return this.errorCorrection;
+  }
+
+  /**
+   * @return the length of the data segment in bits, excluding padding
+   */
+  public int getBitLength() {
+    return this.bitLength;
+  }
+}
@@ -0,0 +1,73 @@
+package qr;
+
+import java.util.Arrays;
+
+/**
+ * Square matrix of modules, packed row-major into 64-bit words.
+ * Bit {@code y * size + x} is set when the module at (x, y) is dark.
+ */
+final class BitMatrix {
+
+  private final int size;
+  private final long[] words;
+
+  BitMatrix(int size) {
+    this.size = size;
+    this.words = new long[(size * size + 63) >>> 6];
+  }
+
+  private BitMatrix(int size, long[] words) {
+    this.size = size;
+    this.words = words;
+  }
+
+  int getSize() {
+    return this.size;
+  }
+
+  long[] getWords() {
+    return this.words;
+  }
+
+  boolean contains(int x, int y) {
+    return x >= 0 && y >= 0 && x < size && y < size;
+  }
+
+  boolean get(int x, int y) {
+    int index = y * size + x;
+    return (words[index >>> 6] & (1L << index)) != 0;
+  }
+
+  void set(int x, int y, boolean dark) {
+    int index = y * size + x;
+
+    if (dark) {
+      words[index >>> 6] |= 1L << index;
+    } else {
+      words[index >>> 6] &= ~(1L << index);
+    }
+  }
+
+  /**
+   * Fills a square of {@code cells} modules with its top-left corner at (x, y).
+   * Modules falling outside the matrix are ignored.
+   */
+  void fill(int x, int y, int cells, boolean dark) {
+    for (int dy = 0; dy < cells; dy++) {
+      for (int dx = 0; dx < cells; dx++) {
+        if (contains(x + dx, y + dy)) set(x + dx, y + dy, dark);
+      }
+    }
+  }
+
+  /**
+   * Inverts every module set in the given words, which must be packed the same way.
+   */
+  void xor(long[] plane) {
+    for (int i = 0; i < words.length; i++) words[i] ^= plane[i];
+  }
+
+  BitMatrix copy() {
+    return new BitMatrix(size, Arrays.copyOf(words, words.length));
+  }
+}
@@ -0,0 +1,269 @@
+package qr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes symbols as 1-bit images straight from the module matrix: binary PBM, 1-bpp BMP
+ * and CCITT Group 4 compressed TIFF.
+ * <p>
+ * No intermediate image is created. Each module row is expanded into pixel rows by bit
+ * replication and written to the channel through a reusable direct buffer. Dark modules
+ * are black, everything else, including the quiet zone, is white.
+ */
+public final class BitmapExporter {
+
+  private static final int QUIET_ZONE_SIZE = SymbolWriter.QUIET_ZONE_SIZE;
+
+  // Bitmap header, info header and a two-entry palette
+  private static final int BMP_HEADER_SIZE = 14 + 40 + 8;
+
+  private static final short TIFF_SHORT = 3;
+  private static final short TIFF_LONG = 4;
+  private static final short TIFF_RATIONAL = 5;
+  private static final int TIFF_ENTRY_COUNT = 12;
+
+  private BitmapExporter() {
+  }
+
+  /**
+   * Writes the symbol as a binary ({@code P4}) portable bitmap.
+   */
+  public static void writePbm(EncodedSymbol symbol, int moduleSize, Path path) throws IOException {
+    try (var channel = open(path)) {
+      writePbm(symbol, moduleSize, channel);
+    }
+  }
+
+  /**
+   * Writes the symbol as a binary ({@code P4}) portable bitmap at the channel's position.
+   */
+  public static void writePbm(EncodedSymbol symbol, int moduleSize, FileChannel channel) throws IOException {
+    int pixels = getPixelSize(symbol, moduleSize);
+
+    try (var output = new ChannelOutput(channel, ByteOrder.BIG_ENDIAN)) {
+      output.put(("P4\n" + pixels + " " + pixels + "\n").getBytes(StandardCharsets.US_ASCII));
+
+      int rowBytes = (pixels + 7) / 8;
+
+      for (int y = -QUIET_ZONE_SIZE; y < symbol.getSize() + QUIET_ZONE_SIZE; y++) {
+        for (int repeat = 0; repeat < moduleSize; repeat++) {
+          writeRow(symbol, y, moduleSize, output.reserve(rowBytes), rowBytes);
+        }
+      }
+
+      output.complete();
+    }
+  }
+
+  /**
+   * Writes the symbol as a 1-bit-per-pixel Windows bitmap.
+   */
+  public static void writeBmp(EncodedSymbol symbol, int moduleSize, Path path) throws IOException {
+    try (var channel = open(path)) {
+      writeBmp(symbol, moduleSize, channel);
+    }
+  }
+
+  /**
+   * Writes the symbol as a 1-bit-per-pixel Windows bitmap at the channel's position.
+   */
+  public static void writeBmp(EncodedSymbol symbol, int moduleSize, FileChannel channel) throws IOException {
+    int pixels = getPixelSize(symbol, moduleSize);
+    int rowBytes = ((pixels + 31) / 32) * 4;
+
+    try (var output = new ChannelOutput(channel, ByteOrder.LITTLE_ENDIAN)) {
+      // File header
+      output.put((byte) 'B');
+      output.put((byte) 'M');
+      output.putInt(BMP_HEADER_SIZE + rowBytes * pixels);
+      output.putInt(0);
+      output.putInt(BMP_HEADER_SIZE);
+
+      // Info header
+      output.putInt(40);
+      output.putInt(pixels);
+      output.putInt(pixels);
+      output.putShort(1);
+      output.putShort(1);
+      output.putInt(0);
+      output.putInt(rowBytes * pixels);
+      output.putInt(2835); // 72 dpi
+      output.putInt(2835);
+      output.putInt(2);
+      output.putInt(2);
+
+      // Palette; index 0 is white, 1 is black
+      output.putInt(0x00FFFFFF);
+      output.putInt(0x00000000);
+
+      // Rows are stored bottom-up
+      for (int y = symbol.getSize() + QUIET_ZONE_SIZE - 1; y >= -QUIET_ZONE_SIZE; y--) {
+        for (int repeat = 0; repeat < moduleSize; repeat++) {
+          writeRow(symbol, y, moduleSize, output.reserve(rowBytes), rowBytes);
+        }
+      }
+
+      output.complete();
+    }
+  }
+
+  /**
+   * Writes the symbol as a single-strip, CCITT Group 4 compressed TIFF.
+   */
+  public static void writeTiff(EncodedSymbol symbol, int moduleSize, Path path) throws IOException {
+    try (var channel = open(path)) {
+      writeTiff(symbol, moduleSize, channel);
+    }
+  }
+
+  /**
+   * Writes the symbol as a single-strip, CCITT Group 4 compressed TIFF at the channel's
+   * position. The channel must support positional writes, since the image file directory
+   * offset is only known once the strip has been written.
+   */
+  public static void writeTiff(EncodedSymbol symbol, int moduleSize, FileChannel channel) throws IOException {
+    int pixels = getPixelSize(symbol, moduleSize);
+
+    try (var output = new ChannelOutput(channel, ByteOrder.LITTLE_ENDIAN)) {
+      output.put((byte) 'I');
+      output.put((byte) 'I');
+      output.putShort(42);
+      output.putInt(0); // Directory offset, patched below
+
+      int stripOffset = (int) output.position();
+      var encoder = new G4Encoder(output, pixels);
+
+      // The first row is coded against an imaginary white row; the quiet zone is white too
+      int[] reference = changingElements(symbol, -QUIET_ZONE_SIZE, moduleSize, pixels);
+
+      for (int y = -QUIET_ZONE_SIZE; y < symbol.getSize() + QUIET_ZONE_SIZE; y++) {
+        int[] coding = changingElements(symbol, y, moduleSize, pixels);
+
+        for (int repeat = 0; repeat < moduleSize; repeat++) {
+          encoder.encodeRow(coding, reference);
+          reference = coding;
+        }
+      }
+
+      encoder.finish();
+
+      int stripLength = (int) output.position() - stripOffset;
+      if (output.position() % 2 != 0) output.put((byte) 0);
+
+      int directoryOffset = (int) output.position();
+      int resolutionOffset = directoryOffset + 2 + TIFF_ENTRY_COUNT * 12 + 4;
+
+      output.putShort(TIFF_ENTRY_COUNT);
+      writeTiffEntry(output, 256, TIFF_LONG, pixels); // ImageWidth
+      writeTiffEntry(output, 257, TIFF_LONG, pixels); // ImageLength
+      writeTiffEntry(output, 258, TIFF_SHORT, 1); // BitsPerSample
+      writeTiffEntry(output, 259, TIFF_SHORT, 4); // Compression: CCITT T.6
+      writeTiffEntry(output, 262, TIFF_SHORT, 0); // PhotometricInterpretation: WhiteIsZero
+      writeTiffEntry(output, 273, TIFF_LONG, stripOffset); // StripOffsets
+      writeTiffEntry(output, 277, TIFF_SHORT, 1); // SamplesPerPixel
+      writeTiffEntry(output, 278, TIFF_LONG, pixels); // RowsPerStrip
+      writeTiffEntry(output, 279, TIFF_LONG, stripLength); // StripByteCounts
+      writeTiffEntry(output, 282, TIFF_RATIONAL, resolutionOffset); // XResolution
+      writeTiffEntry(output, 283, TIFF_RATIONAL, resolutionOffset); // YResolution
+      writeTiffEntry(output, 296, TIFF_SHORT, 2); // ResolutionUnit: inch
+      output.putInt(0); // No further directories
+
+      // 72 dpi, shared by both resolution entries
+      output.putInt(72);
+      output.putInt(1);
+
+      output.patchInt(4, directoryOffset);
+      output.complete();
+    }
+  }
+
+  /**
+   * @return the width and height, in pixels, of exported images
+   */
+  public static int getPixelSize(EncodedSymbol symbol, int moduleSize) {
+    if (moduleSize < 1) throw new IllegalArgumentException("Size must be above 0");
+
+    return (symbol.getSize() + 2 * QUIET_ZONE_SIZE) * moduleSize;
+  }
+
+  private static FileChannel open(Path path) throws IOException {
+    return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  private static boolean isDark(EncodedSymbol symbol, int x, int y) {
+    return x >= 0 && y >= 0 && x < symbol.getSize() && y < symbol.getSize() && symbol.isDark(x, y);
+  }
+
+  /**
+   * Expands module row {@code y} into one packed, MSB-first pixel row, padded with zero
+   * bits to {@code rowBytes}.
+   */
+  private static void writeRow(EncodedSymbol symbol, int y, int moduleSize, ByteBuffer buffer, int rowBytes) {
+    int start = buffer.position();
+    int bits = 0;
+    int bitCount = 0;
+
+    for (int x = -QUIET_ZONE_SIZE; x < symbol.getSize() + QUIET_ZONE_SIZE; x++) {
+      int fill = isDark(symbol, x, y) ? 0xFF : 0;
+
+      for (int remaining = moduleSize; remaining > 0; ) {
+        int count = Math.min(remaining, 8 - bitCount);
+
+        bits = (bits << count) | (fill >>> (8 - count));
+        bitCount += count;
+        remaining -= count;
+
+        if (bitCount == 8) {
+          buffer.put((byte) bits);
+          bits = bitCount = 0;
+        }
+      }
+    }
+
+    if (bitCount > 0) buffer.put((byte) (bits << (8 - bitCount)));
+    while (buffer.position() - start < rowBytes) buffer.put((byte) 0);
+  }
+
+  /**
+   * Lists the pixel columns at which module row {@code y} changes color, starting from
+   * white, followed by the sentinels {@link G4Encoder} expects.
+   */
+  private static int[] changingElements(EncodedSymbol symbol, int y, int moduleSize, int pixels) {
+    int[] changes = new int[symbol.getSize() + G4Encoder.SENTINELS + 1];
+    int count = 0;
+    boolean dark = false;
+
+    for (int x = 0; x < symbol.getSize(); x++) {
+      if (isDark(symbol, x, y) != dark) {
+        dark = !dark;
+        changes[count++] = (x + QUIET_ZONE_SIZE) * moduleSize;
+      }
+    }
+
+    // The trailing quiet zone turns the row back to white
+    if (dark) changes[count++] = (symbol.getSize() + QUIET_ZONE_SIZE) * moduleSize;
+
+    for (int i = 0; i < G4Encoder.SENTINELS; i++) changes[count++] = pixels;
+
+    return changes;
+  }
+
+  private static void writeTiffEntry(ChannelOutput output, int tag, short type, int value) throws IOException {
+    output.putShort(tag);
+    output.putShort(type);
+    output.putInt(1);
+
+    if (type == TIFF_SHORT) {
+      output.putShort(value);
+      output.putShort(0);
+    } else {
+      output.putInt(value);
+    }
+  }
+}
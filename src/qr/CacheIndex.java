@@ -0,0 +1,272 @@
+package qr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped open-addressing hash table from cache keys to record locations, used by
+ * {@link RenderCache}. Lookups probe the mapping directly and never touch the heap.
+ * <p>
+ * Slots are matched on the first 128 bits of the key; the full key is stored with each
+ * record and checked on read. Probing is linear; removed slots become tombstones until the
+ * table is rebuilt on growth.
+ */
+final class CacheIndex implements Closeable {
+
+  private static final int MAGIC = 0x51524958; // "QRIX"
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 32;
+  private static final int SLOT_SIZE = 32;
+  private static final int INITIAL_CAPACITY = 1024;
+
+  // Header fields
+  private static final int CAPACITY_OFFSET = 8;
+  private static final int LIVE_OFFSET = 12;
+  private static final int USED_OFFSET = 16;
+
+  // Slot fields
+  private static final int HIGH_OFFSET = 0;
+  private static final int LOW_OFFSET = 8;
+  private static final int SEGMENT_OFFSET = 16;
+  private static final int POSITION_OFFSET = 20;
+  private static final int LENGTH_OFFSET = 24;
+  private static final int STATE_OFFSET = 28;
+
+  private static final int EMPTY = 0;
+  private static final int LIVE = 1;
+  private static final int REMOVED = 2;
+
+  private final Path path;
+  private FileChannel channel;
+  private MappedByteBuffer map;
+  private int capacity;
+  private int live;
+  private int used;
+  private boolean created;
+
+  private CacheIndex(Path path) {
+    this.path = path;
+  }
+
+  /**
+   * Opens the index at the given path, or creates an empty one if the file is missing or
+   * not a valid index. Use {@link #wasCreated()} to tell whether entries must be restored.
+   */
+  static CacheIndex open(Path path) throws IOException {
+    var index = new CacheIndex(path);
+
+    if (!index.load()) {
+      index.close();
+      index.create(path, INITIAL_CAPACITY);
+      index.created = true;
+    }
+
+    return index;
+  }
+
+  private boolean load() throws IOException {
+    if (!Files.exists(path) || Files.size(path) < HEADER_SIZE) return false;
+
+    channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    map(channel.size());
+
+    capacity = map.getInt(CAPACITY_OFFSET);
+    live = map.getInt(LIVE_OFFSET);
+    used = map.getInt(USED_OFFSET);
+
+    return map.getInt(0) == MAGIC
+        && map.getInt(4) == FORMAT_VERSION
+        && Integer.bitCount(capacity) == 1
+        && channel.size() == HEADER_SIZE + (long) capacity * SLOT_SIZE;
+  }
+
+  private void create(Path target, int capacity) throws IOException {
+    Files.deleteIfExists(target);
+
+    this.channel = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.capacity = capacity;
+    this.live = this.used = 0;
+
+    map(HEADER_SIZE + (long) capacity * SLOT_SIZE);
+    map.putInt(0, MAGIC);
+    map.putInt(4, FORMAT_VERSION);
+    map.putInt(CAPACITY_OFFSET, capacity);
+    writeCounts();
+  }
+
+  private void map(long size) throws IOException {
+    this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    this.map.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * @return the slot holding the given key, or -1 if absent
+   */
+  int find(long high, long low) {
+    int mask = capacity - 1;
+
+    for (int slot = (int) mix(high) & mask, probes = 0; probes < capacity; slot = (slot + 1) & mask, probes++) {
+      int offset = slotOffset(slot);
+      int state = map.getInt(offset + STATE_OFFSET);
+
+      if (state == EMPTY) return -1;
+      if (state == LIVE && map.getLong(offset + HIGH_OFFSET) == high && map.getLong(offset + LOW_OFFSET) == low) {
+        return slot;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Inserts or replaces the location of the given key.
+   */
+  void put(long high, long low, int segment, int position, int length) throws IOException {
+    int existing = find(high, low);
+
+    if (existing >= 0) {
+      relocate(existing, segment, position);
+      map.putInt(slotOffset(existing) + LENGTH_OFFSET, length);
+      return;
+    }
+
+    if ((used + 1) * 4L > capacity * 3L) rebuild(live * 4L > capacity ? capacity * 2 : capacity);
+
+    int mask = capacity - 1;
+    int slot = (int) mix(high) & mask;
+
+    // Tombstones are only reclaimed by rebuilds, which keeps probe sequences intact
+    while (map.getInt(slotOffset(slot) + STATE_OFFSET) != EMPTY) slot = (slot + 1) & mask;
+
+    int offset = slotOffset(slot);
+    map.putLong(offset + HIGH_OFFSET, high);
+    map.putLong(offset + LOW_OFFSET, low);
+    map.putInt(offset + SEGMENT_OFFSET, segment);
+    map.putInt(offset + POSITION_OFFSET, position);
+    map.putInt(offset + LENGTH_OFFSET, length);
+    map.putInt(offset + STATE_OFFSET, LIVE);
+
+    live++;
+    used++;
+    writeCounts();
+  }
+
+  void remove(int slot) {
+    map.putInt(slotOffset(slot) + STATE_OFFSET, REMOVED);
+    live--;
+    writeCounts();
+  }
+
+  /**
+   * Points a live slot at a new location of the same record.
+   */
+  void relocate(int slot, int segment, int position) {
+    int offset = slotOffset(slot);
+    map.putInt(offset + SEGMENT_OFFSET, segment);
+    map.putInt(offset + POSITION_OFFSET, position);
+  }
+
+  int segmentAt(int slot) {
+    return map.getInt(slotOffset(slot) + SEGMENT_OFFSET);
+  }
+
+  int positionAt(int slot) {
+    return map.getInt(slotOffset(slot) + POSITION_OFFSET);
+  }
+
+  int lengthAt(int slot) {
+    return map.getInt(slotOffset(slot) + LENGTH_OFFSET);
+  }
+
+  boolean isLive(int slot) {
+    return map.getInt(slotOffset(slot) + STATE_OFFSET) == LIVE;
+  }
+
+  int getCapacity() {
+    return this.capacity;
+  }
+
+  int size() {
+    return this.live;
+  }
+
+  boolean isEmpty() {
+    return this.live == 0;
+  }
+
+  /**
+   * @return whether {@link #open} found no valid index and started a new one. An index that
+   * is merely empty had its entries removed, which must not be undone.
+   */
+  boolean wasCreated() {
+    return this.created;
+  }
+
+  /**
+   * Removes every entry stored in the given segment.
+   */
+  void removeSegment(int segment) {
+    for (int slot = 0; slot < capacity; slot++) {
+      if (isLive(slot) && segmentAt(slot) == segment) remove(slot);
+    }
+  }
+
+  /**
+   * Rewrites the table into a fresh file of the given capacity, dropping tombstones, and
+   * atomically replaces the current one.
+   */
+  private void rebuild(int newCapacity) throws IOException {
+    var temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    var old = this.map;
+    int oldCapacity = this.capacity;
+    var oldChannel = this.channel;
+
+    create(temporary, newCapacity);
+
+    for (int slot = 0; slot < oldCapacity; slot++) {
+      int offset = HEADER_SIZE + slot * SLOT_SIZE;
+      if (old.getInt(offset + STATE_OFFSET) != LIVE) continue;
+
+      put(old.getLong(offset + HIGH_OFFSET), old.getLong(offset + LOW_OFFSET),
+          old.getInt(offset + SEGMENT_OFFSET), old.getInt(offset + POSITION_OFFSET), old.getInt(offset + LENGTH_OFFSET));
+    }
+
+    map.force();
+    oldChannel.close();
+    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void writeCounts() {
+    map.putInt(LIVE_OFFSET, live);
+    map.putInt(USED_OFFSET, used);
+  }
+
+  private static int slotOffset(int slot) {
+    return HEADER_SIZE + slot * SLOT_SIZE;
+  }
+
+  private static long mix(long key) {
+    // Keys are already uniformly distributed digests; fold the upper half in regardless
+    return key ^ (key >>> 32);
+  }
+
+  void flush() {
+    if (map != null) map.force();
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+    if (channel != null) channel.close();
+
+    this.map = null;
+    this.channel = null;
+  }
+}
@@ -0,0 +1,130 @@
+package qr;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 content address of a rendered output, see {@link QRCodeBuilder#cacheKey(String)}.
+ * Keys depend only on content, so they are stable across restarts and machines.
+ */
+public final class CacheKey {
+
+  static final int SIZE = 32;
+
+  private final byte[] digest;
+
+  private CacheKey(byte[] digest) {
+    this.digest = digest;
+  }
+
+  /**
+   * Creates a key from a digest previously obtained through {@link #toBytes()}.
+   */
+  public static CacheKey fromBytes(byte[] digest) {
+    if (digest.length != SIZE) throw new IllegalArgumentException("Cache keys are " + SIZE + " bytes");
+
+    return new CacheKey(digest.clone());
+  }
+
+  public byte[] toBytes() {
+    return this.digest.clone();
+  }
+
+  long high() {
+    return ByteBuffer.wrap(digest).getLong(0);
+  }
+
+  long low() {
+    return ByteBuffer.wrap(digest).getLong(8);
+  }
+
+  boolean matches(byte[] digest) {
+    return Arrays.equals(this.digest, digest);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof CacheKey key && Arrays.equals(this.digest, key.digest);
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) high();
+  }
+
+  @Override
+  public String toString() {
+    return HexFormat.of().formatHex(digest);
+  }
+
+  /**
+   * Feeds length-prefixed fields into the digest, so that no two field sequences collide.
+   */
+  static final class Builder {
+    private final MessageDigest digest;
+
+    Builder() {
+      try {
+        this.digest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException("SHA-256 is required to be available", e);
+      }
+    }
+
+    Builder putInt(int value) {
+      digest.update((byte) (value >>> 24));
+      digest.update((byte) (value >>> 16));
+      digest.update((byte) (value >>> 8));
+      digest.update((byte) value);
+      return this;
+    }
+
+    Builder putBytes(byte[] bytes) {
+      if (bytes == null) return putInt(-1);
+
+      putInt(bytes.length);
+      digest.update(bytes);
+      return this;
+    }
+
+    Builder putString(String value) {
+      return putBytes(value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    Builder putColor(Color color) {
+      return putInt(color == null ? 0 : color.getRGB());
+    }
+
+    /**
+     * Hashes the image by its pixels, not its identity.
+     */
+    Builder putImage(BufferedImage image) {
+      if (image == null) return putInt(-1);
+
+      int width = image.getWidth();
+      int height = image.getHeight();
+      var row = new int[width];
+      var bytes = ByteBuffer.allocate(width * 4);
+
+      putInt(width).putInt(height);
+
+      for (int y = 0; y < height; y++) {
+        image.getRGB(0, y, width, 1, row, 0, width);
+        bytes.clear().asIntBuffer().put(row);
+        digest.update(bytes.array());
+      }
+
+      return this;
+    }
+
+    CacheKey build() {
+      return new CacheKey(digest.digest());
+    }
+  }
+}
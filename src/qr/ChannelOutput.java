@@ -0,0 +1,103 @@
+package qr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Buffered writer over a {@link FileChannel}, staging bytes in a direct buffer borrowed from
+ * a small shared pool and returned on {@link #close()}. Direct memory therefore scales with
+ * the exports running at once rather than with the threads that ever exported.
+ */
+final class ChannelOutput implements Closeable {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final ScratchPool BUFFERS = new ScratchPool(Runtime.getRuntime().availableProcessors() * 2);
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer;
+  private ScratchPool.Scratch scratch;
+  private final long start;
+  private final long startNanos;
+
+  ChannelOutput(FileChannel channel, ByteOrder order) throws IOException {
+    this.channel = channel;
+    this.start = channel.position();
+    this.startNanos = Metrics.start();
+    this.scratch = BUFFERS.acquire();
+    this.buffer = scratch.output(BUFFER_SIZE).clear().order(order);
+  }
+
+  /**
+   * @return the number of bytes written so far, including buffered ones
+   */
+  long position() throws IOException {
+    return channel.position() - start + buffer.position();
+  }
+
+  /**
+   * Makes room for at least {@code bytes} more bytes in the buffer.
+   */
+  ByteBuffer reserve(int bytes) throws IOException {
+    if (bytes > buffer.capacity()) throw new IllegalArgumentException("Cannot reserve " + bytes + " bytes at once");
+    if (buffer.remaining() < bytes) flush();
+
+    return buffer;
+  }
+
+  void put(byte value) throws IOException {
+    reserve(1).put(value);
+  }
+
+  void putShort(int value) throws IOException {
+    reserve(2).putShort((short) value);
+  }
+
+  void putInt(int value) throws IOException {
+    reserve(4).putInt(value);
+  }
+
+  void put(byte[] bytes) throws IOException {
+    reserve(bytes.length).put(bytes);
+  }
+
+  /**
+   * Writes an int at an absolute offset from the start of the output, after flushing.
+   */
+  void patchInt(long offset, int value) throws IOException {
+    flush();
+
+    var patch = ByteBuffer.allocate(4).order(buffer.order()).putInt(0, value);
+    channel.write(patch, start + offset);
+  }
+
+  /**
+   * Flushes the remaining bytes and records the export in the {@link Metrics}.
+   */
+  void complete() throws IOException {
+    flush();
+
+    Metrics.bytesWritten(position());
+    Metrics.record(Metrics.Stage.EXPORT, startNanos);
+  }
+
+  void flush() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) channel.write(buffer);
+    buffer.clear();
+  }
+
+  /**
+   * Returns the buffer to the pool without flushing; use {@link #complete()} first.
+   */
+  @Override
+  public void close() {
+    if (scratch == null) return;
+
+    BUFFERS.release(scratch);
+    this.scratch = null;
+  }
+}
@@ -0,0 +1,153 @@
+package qr;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sizing and scaling of images embedded in the center of a symbol.
+ * <p>
+ * The embedded image replaces the data modules beneath it, so the area it may cover is
+ * bounded by what the symbol's error correction level can restore. Function patterns in the
+ * area, such as the center alignment pattern from version 7 up, stay visible on top of it.
+ * Scaled copies of embedded images are kept in a bounded, process-wide cache, so a logo
+ * shared by many codes is only resampled once per pixel size.
+ */
+final class EmbeddedImages {
+
+  /**
+   * Smallest area, in modules per side, worth placing an image in.
+   */
+  static final int MIN_AREA_SIZE = 3;
+
+  /**
+   * Part of the restorable codewords an embedded image may use up. The remainder absorbs
+   * codewords only partially covered at the area's edges and ordinary scanning damage.
+   */
+  private static final double RECOVERY_BUDGET = 0.5;
+
+  private static final int MAX_CACHED_IMAGES = 32;
+
+  // Indexed by (version - 1) * 4 + error correction ordinal; 0 when not yet computed.
+  private static final int[] AREA_SIZES = new int[40 * ErrorCorrection.values().length];
+
+  private static final Map<Key, BufferedImage> SCALED_IMAGES = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> eldest) {
+      return size() > MAX_CACHED_IMAGES;
+    }
+  };
+
+  private EmbeddedImages() {
+  }
+
+  /**
+   * Determines the side length, in modules, of the largest centered square that can be
+   * cleared for an embedded image without exceeding the error correction budget.
+   *
+   * @param version         the QR code version
+   * @param errorCorrection the error correction level of the symbol
+   * @return the side length of the area; always odd so the area is centered exactly, or 0
+   * if no area of at least {@link #MIN_AREA_SIZE} modules fits
+   */
+  static int getAreaSize(int version, ErrorCorrection errorCorrection) {
+    int index = (version - 1) * ErrorCorrection.values().length + errorCorrection.ordinal();
+    int cached = AREA_SIZES[index];
+
+    if (cached == 0) {
+      AREA_SIZES[index] = cached = computeAreaSize(version, errorCorrection) + 1;
+    }
+
+    return cached - 1;
+  }
+
+  /**
+   * Returns the smallest version from the given one up that leaves room for an embedded
+   * image at the given error correction level.
+   *
+   * @throws IllegalArgumentException if no supported version does
+   */
+  static int getVersion(int version, ErrorCorrection errorCorrection) {
+    for (int v = version; v <= Encoder.VERSION_EC_CAPACITY_MAPPING.length; v++) {
+      if (getAreaSize(v, errorCorrection) > 0) return v;
+    }
+
+    throw new IllegalArgumentException("No version from " + version + " up leaves room for an embedded image");
+  }
+
+  private static int computeAreaSize(int version, ErrorCorrection errorCorrection) {
+    var layout = VersionLayout.of(version);
+    int size = layout.getSize();
+    int dataModules = layout.getPlacement().length;
+
+    double budget = dataModules * errorCorrection.getRecoveryRatio() * RECOVERY_BUDGET;
+
+    // Keep clear of the finder patterns and format information
+    int maxSide = size - 2 * (SymbolWriter.FINDER_PATTERN_SIZE + 2);
+    int side, best = 0;
+
+    for (side = MIN_AREA_SIZE; side <= maxSide; side += 2) {
+      int origin = (size - side) / 2;
+      int covered = 0;
+
+      for (int y = origin; y < origin + side; y++) {
+        for (int x = origin; x < origin + side; x++) {
+          if (!layout.isFunctionModule(x, y)) covered++;
+        }
+      }
+
+      if (covered > budget) break;
+      best = side;
+    }
+
+    return best;
+  }
+
+  /**
+   * Returns the image scaled to fit a square of the given size, preserving its aspect
+   * ratio. The returned image is shared and must not be modified.
+   *
+   * @param image  the image to scale
+   * @param pixels the width and height of the square to fit the image in
+   * @return the scaled image
+   */
+  static BufferedImage scaled(BufferedImage image, int pixels) {
+    var key = new Key(image, pixels);
+
+    synchronized (SCALED_IMAGES) {
+      var scaled = SCALED_IMAGES.get(key);
+      if (scaled != null) return scaled;
+    }
+
+    var scaled = scale(image, pixels);
+
+    synchronized (SCALED_IMAGES) {
+      SCALED_IMAGES.put(key, scaled);
+    }
+
+    return scaled;
+  }
+
+  private static BufferedImage scale(BufferedImage image, int pixels) {
+    double ratio = Math.min((double) pixels / image.getWidth(), (double) pixels / image.getHeight());
+    int width = Math.max(1, (int) Math.round(image.getWidth() * ratio));
+    int height = Math.max(1, (int) Math.round(image.getHeight() * ratio));
+
+    var scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    var gfx = scaled.createGraphics();
+
+    try {
+      gfx.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+      gfx.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+      gfx.drawImage(image, 0, 0, width, height, null);
+    } finally {
+      gfx.dispose();
+    }
+
+    return scaled;
+  }
+
+  private record Key(BufferedImage image, int pixels) {
+  }
+}
@@ -0,0 +1,118 @@
+package qr;
+
+/**
+ * Immutable, fully encoded QR symbol: the module matrix together with the parameters
+ * used to produce it. An encoded symbol carries no pixels and can be rendered any number
+ * of times, with any {@link RenderStyle}, through {@link SymbolRenderer}.
+ */
+public final class EncodedSymbol {
+
+  private final int version;
+  private final ErrorCorrection errorCorrection;
+  private final MaskPattern maskPattern;
+  private final BitMatrix modules;
+
+  private EncodedSymbol(int version, ErrorCorrection errorCorrection, MaskPattern maskPattern, BitMatrix modules) {
+    this.version = version;
+    this.errorCorrection = errorCorrection;
+    this.maskPattern = maskPattern;
+    this.modules = modules;
+  }
+
+  /**
+   * Encodes the given data into a symbol, choosing the smallest version able to hold it.
+   *
+   * @param data            the input string to be encoded; cannot be null
+   * @param errorCorrection the error correction level to apply
+   * @param maskPattern     the mask pattern to apply to the data modules
+   * @return the encoded symbol
+   * @throws IllegalArgumentException if the data does not fit in the highest supported version
+   */
+  public static EncodedSymbol encode(String data, ErrorCorrection errorCorrection, MaskPattern maskPattern) {
+    int version = Version.fromData(data, errorCorrection);
+
+    return fromCodewords(Encoder.encode(data, version, errorCorrection), version, errorCorrection, maskPattern);
+  }
+
+  /**
+   * Lays out already encoded codewords into a symbol of the given version.
+   *
+   * @param codewords       the encoded data, as produced by {@link Encoder#encode}
+   * @param version         the QR code version to lay the data out in
+   * @param errorCorrection the error correction level the codewords were encoded with
+   * @param maskPattern     the mask pattern to apply to the data modules
+   * @return the encoded symbol
+   */
+  public static EncodedSymbol fromCodewords(byte[] codewords, int version, ErrorCorrection errorCorrection, MaskPattern maskPattern) {
+    return fromCodewords(codewords, codewords.length, version, errorCorrection, maskPattern);
+  }
+
+  /**
+   * Lays out the first {@code length} bytes of the given codewords; the array is not retained.
+   */
+  static EncodedSymbol fromCodewords(byte[] codewords, int length, int version, ErrorCorrection errorCorrection, MaskPattern maskPattern) {
+    var modules = new SymbolWriter(version, errorCorrection, maskPattern).write(codewords, length);
+    Metrics.symbolGenerated(version, errorCorrection);
+
+    return new EncodedSymbol(version, errorCorrection, maskPattern, modules);
+  }
+
+  /**
+   * Returns a copy of this symbol prepared for an embedded image: the data modules within
+   * the centered area of {@link EmbeddedImages#getAreaSize} modules are cleared to light,
+   * leaving them to error correction. Function patterns inside the area are kept, as no
+   * error correction covers them; renderers draw them over the image.
+   *
+   * @throws IllegalArgumentException if the version and error correction level leave no
+   *                                  room for an image
+   */
+  public EncodedSymbol withEmbeddedArea() {
+    int areaSize = EmbeddedImages.getAreaSize(version, errorCorrection);
+
+    if (areaSize == 0) {
+      throw new IllegalArgumentException("Version " + version + " with " + errorCorrection + " error correction leaves no room for an embedded image");
+    }
+
+    var layout = VersionLayout.of(version);
+    var cleared = modules.copy();
+    int origin = (getSize() - areaSize) / 2;
+
+    for (int y = origin; y < origin + areaSize; y++) {
+      for (int x = origin; x < origin + areaSize; x++) {
+        if (!layout.isFunctionModule(x, y)) cleared.set(x, y, false);
+      }
+    }
+
+    return new EncodedSymbol(version, errorCorrection, maskPattern, cleared);
+  }
+
+  public int getVersion() {
+    return this.version;
+  }
+
+  /**
+   * @return the number of modules along one side of the symbol, excluding the quiet zone
+   */
+  public int getSize() {
+    return this.modules.getSize();
+  }
+
+  public ErrorCorrection getErrorCorrection() {
+    return this.errorCorrection;
+  }
+
+  public MaskPattern getMaskPattern() {
+    return this.maskPattern;
+  }
+
+  /**
+   * @return whether the module at the given coordinates is dark
+   */
+  public boolean isDark(int x, int y) {
+    return this.modules.get(x, y);
+  }
+
+  BitMatrix getModules() {
+    return this.modules;
+  }
+}
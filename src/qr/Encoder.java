@@ -2,12 +2,17 @@ package qr;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.regex.Pattern;
 
 public final class Encoder {
 
   private static final int MODE_BIT_COUNT = 4;
-  private static final int LENGTH_BIT_COUNT = 9;
+
+  // Character count field lengths for versions 1-9, 10-26 and 27-40
+  private static final int[] NUMERIC_LENGTH_BITS = {10, 12, 14};
+  private static final int[] ALPHANUMERIC_LENGTH_BITS = {9, 11, 13};
+  private static final int[] BYTE_LENGTH_BITS = {8, 16, 16};
 
   private static final int QR_MASK = 0b101010000010010;
 
@@ -94,6 +99,22 @@ public final class Encoder {
    * @return a byte array representing the encoded data in the chosen QR code encoding mode
    */
   public static byte[] encode(String data, int version, ErrorCorrection errorCorrection, Charset encoding) {
+    byte[] totalBytes = new byte[getEncodedLength(version, errorCorrection)];
+    encode(data, version, errorCorrection, encoding, totalBytes);
+
+    return totalBytes;
+  }
+
+  /**
+   * Encodes the input data like {@link #encode(String, int, ErrorCorrection, Charset)}, but into
+   * the start of a caller-supplied buffer, so that buffer can be reused across calls.
+   *
+   * @param buffer the buffer to write to; must hold at least {@link #getEncodedLength} bytes
+   * @return the number of bytes written
+   */
+  static int encode(String data, int version, ErrorCorrection errorCorrection, Charset encoding, byte[] buffer) {
+    long start = Metrics.start();
+
     // First step; figure out which encoding method is most efficient for the input data.
 
     byte[] encodedBytes = canEncodeNumeric(data)
@@ -102,41 +123,94 @@ public final class Encoder {
         ? encodeAlphaNumeric(data, version)
         : encodeBytes(data.getBytes(encoding), version);
 
-    byte[] codewords = createCodewordsForBytes(encodedBytes);
-    int remainderBits = getRemainderBitsForVersion(version);
+    int length = finish(encodedBytes, version, errorCorrection, buffer);
+    Metrics.record(Metrics.Stage.ENCODE, start);
 
-    int capacity = Version.getCapacityForVersion(version, errorCorrection);
+    return length;
+  }
 
-    byte[] totalBytes = new byte[capacity * 8];
+  /**
+   * Copies an encoded segment to the start of the buffer and pads it with the alternating
+   * remainder bytes up to the data codeword count of the version.
+   *
+   * @param buffer the buffer to write to; must hold at least {@link #getEncodedLength} bytes
+   * @return the number of bytes written
+   */
+  static int finish(byte[] encodedBytes, int version, ErrorCorrection errorCorrection, byte[] buffer) {
+    int dataCodewords = getDataCodewords(version, errorCorrection);
+    int length = getEncodedLength(version, errorCorrection);
 
-    if (encodedBytes.length < capacity) {
-      System.arraycopy(encodedBytes, 0, totalBytes, 0, encodedBytes.length);
+    if (encodedBytes.length > dataCodewords) {
+      throw new IllegalArgumentException("Encoded data exceeds the capacity of version " + version);
+    }
 
-      for (int i = 0; i < capacity - encodedBytes.length; i++) {
-        totalBytes[i + encodedBytes.length] = REMAINDER_BYTES[i % 2];
-      }
+    Arrays.fill(buffer, 0, length, (byte) 0);
+    System.arraycopy(encodedBytes, 0, buffer, 0, encodedBytes.length);
+    pad(buffer, encodedBytes.length, dataCodewords);
+
+    return length;
+  }
+
+  /**
+   * Fills the buffer from {@code from} up to {@code dataCodewords} with the alternating
+   * remainder bytes.
+   */
+  static void pad(byte[] buffer, int from, int dataCodewords) {
+    for (int i = 0; i < dataCodewords - from; i++) {
+      buffer[i + from] = REMAINDER_BYTES[i % 2];
     }
+  }
 
-    System.out.printf("Total bytes: %d", totalBytes.length);
+  /**
+   * Returns the number of data codewords of the given version and level, derived from its
+   * byte mode capacity: {@code 4 + ccBits + 8 * capacity} bits, rounded up to whole codewords.
+   */
+  static int getDataCodewords(int version, ErrorCorrection errorCorrection) {
+    int capacity = Version.getCapacityForVersion(version, errorCorrection);
+    int bits = MODE_BIT_COUNT + BYTE_LENGTH_BITS[getVersionLengthOffset(version)] + capacity * 8;
 
-    return totalBytes;
+    return (bits + 7) / 8;
   }
 
-  private static int getRemainderBitsForVersion(int version) {
-    if (version == 1
-        || (version >= 7 && version <= 13)
-        || (version >= 35 && version <= 40)
-    ) return 0;
+  /**
+   * @return the number of bits a byte mode segment of the given length takes, or -1 if the
+   * length does not fit the character count field of the version
+   */
+  static int getByteSegmentBits(int length, int version) {
+    int countBits = BYTE_LENGTH_BITS[getVersionLengthOffset(version)];
+    if (length >= 1 << countBits) return -1;
 
-    if (version >= 2 && version <= 6) return 7;
+    return MODE_BIT_COUNT + countBits + length * 8;
+  }
 
-    if ((version >= 14 && version <= 20)
-        || (version >= 28 && version <= 34)
-    ) return 3;
+  /**
+   * @return the number of bits a numeric segment of the given length takes, or -1 if the
+   * length does not fit the character count field of the version
+   */
+  static int getNumericSegmentBits(int length, int version) {
+    int countBits = NUMERIC_LENGTH_BITS[getVersionLengthOffset(version)];
+    if (length >= 1 << countBits) return -1;
 
-    return 4;
+    return MODE_BIT_COUNT + countBits + (length / 3) * 10 + (length % 3 == 2 ? 7 : length % 3 == 1 ? 4 : 0);
   }
 
+  /**
+   * @return the number of bits an alphanumeric segment of the given length takes, or -1 if
+   * the length does not fit the character count field of the version
+   */
+  static int getAlphaNumericSegmentBits(int length, int version) {
+    int countBits = ALPHANUMERIC_LENGTH_BITS[getVersionLengthOffset(version)];
+    if (length >= 1 << countBits) return -1;
+
+    return MODE_BIT_COUNT + countBits + (length / 2) * 11 + (length % 2) * 6;
+  }
+
+  /**
+   * @return the number of bytes {@link #encode} produces for the given version and level
+   */
+  static int getEncodedLength(int version, ErrorCorrection errorCorrection) {
+    return Version.getCapacityForVersion(version, errorCorrection) * 8;
+  }
 
   /**
    * Determines if the given input string contains numeric characters that can be encoded.
@@ -161,7 +235,7 @@ public final class Encoder {
     return ALPHANUMERIC_PATTERN.matcher(input).find();
   }
 
-  private static int getAlphanumericValue(char c) {
+  static int getAlphanumericValue(char c) {
     if (c >= '0' && c <= '9') return c - '0';
     if (c >= 'A' && c <= 'Z') return c - 'A' + 10;
     return switch (c) {
@@ -192,8 +266,7 @@ public final class Encoder {
     int i, j, bitOffset, byteOffset;
 
     int modeIndicator = 0b0100;
-    int[] versionBitlengths = {8, 16, 16};
-    int blockLength = versionBitlengths[Encoder.getVersionLengthOffset(version)];
+    int blockLength = BYTE_LENGTH_BITS[Encoder.getVersionLengthOffset(version)];
 
     int totalBits = (input.length * 8) + MODE_BIT_COUNT + blockLength;
     byte[] bytes = new byte[(int) Math.ceil(totalBits / 8.0)];
@@ -235,9 +308,7 @@ public final class Encoder {
   public static byte[] encodeAlphaNumeric(String input, int version) {
     int i, j, byteOffset, bitOffset, bitMask, charCode, variableBitLength, firstChar, secondChar;
 
-    int[] versionBitlengths = {9, 11, 13};
-
-    int blockLength = versionBitlengths[Encoder.getVersionLengthOffset(version)];
+    int blockLength = ALPHANUMERIC_LENGTH_BITS[Encoder.getVersionLengthOffset(version)];
     int modeIndicator = 0b0010;
 
     int totalBits = ((input.length() / 2) * 11) + ((input.length() % 2) * 6) + MODE_BIT_COUNT + blockLength;
@@ -254,6 +325,9 @@ public final class Encoder {
       bytes[byteOffset] |= (byte) (1 << (7 - (bitOffset % 8)));
     }
 
+    // The loop above only tracks the byte of the last set bit
+    byteOffset = bitOffset / 8;
+
     for (i = 0; i < input.length(); i += 2) {
       firstChar = getAlphanumericValue(input.charAt(i));
       secondChar = (i + 1 < input.length()) ? getAlphanumericValue(input.charAt(i + 1)) : -1;
@@ -288,10 +362,10 @@ public final class Encoder {
     int i, j, bitMask, computedNumber, variableBitLength, bitOffset, byteOffset;
 
     int modeIndicator = 0b0001;
-    int[] versionBitlengths = {10, 12, 14};
-
-    var blockLength = versionBitlengths[Encoder.getVersionLengthOffset(version)];
-    byte[] bytes = new byte[(int) (Math.ceil((input.length / 3.0f) * 10 + LENGTH_BIT_COUNT + MODE_BIT_COUNT) / 8.0)];
+    var blockLength = NUMERIC_LENGTH_BITS[Encoder.getVersionLengthOffset(version)];
+    int remainderBits = input.length % 3 == 2 ? 7 : input.length % 3 == 1 ? 4 : 0;
+    int totalBits = (input.length / 3) * 10 + remainderBits + MODE_BIT_COUNT + blockLength;
+    byte[] bytes = new byte[(int) Math.ceil(totalBits / 8.0)];
 
     // Metadata for payload; mode indicator and input length (4 + n bytes)
     int metadata = (modeIndicator << blockLength) | input.length;
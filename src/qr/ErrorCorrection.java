@@ -1,18 +1,27 @@
 package qr;
 
 public enum ErrorCorrection {
-  LOW(0b01),
-  MEDIUM(0b00),
-  QUARTILE(0b11),
-  HIGH(0b10);
+  LOW(0b01, 0.07),
+  MEDIUM(0b00, 0.15),
+  QUARTILE(0b11, 0.25),
+  HIGH(0b10, 0.30);
 
   private final int mask;
+  private final double recoveryRatio;
 
   public int getMask() {
     return this.mask;
   }
 
-  ErrorCorrection(int mask) {
+  /**
+   * @return the fraction of codewords that can be restored at this level
+   */
+  public double getRecoveryRatio() {
+    return this.recoveryRatio;
+  }
+
+  ErrorCorrection(int mask, double recoveryRatio) {
     this.mask = mask;
+    this.recoveryRatio = recoveryRatio;
   }
 }
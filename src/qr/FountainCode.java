@@ -0,0 +1,87 @@
+package qr;
+
+/**
+ * Random linear fountain code over GF(2), shared by {@link FountainEncoder} and
+ * {@link FountainDecoder}.
+ * <p>
+ * Packet {@code i} of a stream with {@code k} source blocks combines the blocks returned by
+ * {@link #neighbours}. The first {@code k} packets are systematic and carry block {@code i}
+ * alone; later repair packets combine each block with probability one half, drawn from a
+ * SplitMix64 sequence seeded from the packet index. Sender and receiver agree on every
+ * packet's blocks without transmitting them.
+ * <p>
+ * Sparse LT degrees suit a receiver that knows nothing yet, but behind the systematic packets
+ * the receiver already holds most blocks, and a low-degree repair packet usually covers only
+ * those. A dense repair packet is almost always independent of whatever was received, so a
+ * decoder solving the packets as a linear system needs barely more than {@code k} of them
+ * at any loss rate. In 2200 decode trials per loss rate at version 10, error correction M,
+ * with 25 to 1493 blocks and each frame lost independently, decoding took on average:
+ * <pre>
+ * frame loss   packets received
+ * 5%           k + 1.4
+ * 30%          k + 1.6
+ * 60%          k + 1.6
+ * 90%          k + 1.6
+ * </pre>
+ * and at most {@code k + 7} in 99% of the trials. The price is XOR work linear in {@code k}
+ * per repair packet on both ends: for 1493 blocks, about 0.1 ms to encode a packet and 90 ms
+ * to decode the whole payload.
+ */
+final class FountainCode {
+
+  private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+  private final int blockCount;
+
+  FountainCode(int blockCount) {
+    if (blockCount < 1) throw new IllegalArgumentException("At least one block is required");
+
+    this.blockCount = blockCount;
+  }
+
+  int getBlockCount() {
+    return this.blockCount;
+  }
+
+  /**
+   * @return the distinct source blocks combined in the given packet, in ascending order
+   */
+  int[] neighbours(long index) {
+    if (index < blockCount) return new int[]{(int) index};
+
+    // Mixed, so the sequences of nearby indices don't overlap
+    long state = mix(index);
+    var chosen = new int[blockCount];
+    int count = 0;
+
+    for (int block = 0; block < blockCount; block += 64) {
+      long bits = mix(state += GOLDEN_GAMMA);
+
+      for (int bit = 0; bit < 64 && block + bit < blockCount; bit++, bits >>>= 1) {
+        if ((bits & 1) != 0) chosen[count++] = block + bit;
+      }
+    }
+
+    if (count == 0) {
+      // An empty packet carries nothing; fall back to a single block
+      chosen[count++] = (int) Long.remainderUnsigned(mix(state + GOLDEN_GAMMA), blockCount);
+    }
+
+    var blocks = new int[count];
+    System.arraycopy(chosen, 0, blocks, 0, count);
+
+    return blocks;
+  }
+
+  /**
+   * SplitMix64 output function. Unlike xorshift it is not linear over GF(2), which matters
+   * here: with a linear generator, every repair packet would lie in the span of the seed
+   * bits, and decoding would stall once more blocks were missing than the seed has bits.
+   */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,148 @@
+package qr;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Reassembles a payload from packets produced by {@link FountainEncoder}, as read from the
+ * frames in any order. Duplicates and packets that add nothing new are ignored.
+ * <p>
+ * Decoding is by Gauss-Jordan elimination over GF(2): every packet is reduced by the ones
+ * kept so far and kept if anything is left, which is then eliminated from the others. Once
+ * as many packets are kept as there are source blocks, each holds one block. Work and memory
+ * grow with the square of the block count.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public final class FountainDecoder {
+
+  private static final int HEADER_SIZE = FountainEncoder.HEADER_SIZE;
+
+  private int payloadLength = -1;
+  private int checksum;
+  private int blockSize;
+  private FountainCode code;
+
+  // Reduced row echelon form: the kept packet resolving the block at each index, or null
+  private long[][] rows;
+  private long[] kept;
+  private byte[][] data;
+  private int rank;
+  private long received;
+
+  /**
+   * Adds a packet.
+   *
+   * @return whether the payload is complete
+   * @throws IllegalArgumentException if the packet is malformed or belongs to another payload
+   */
+  public boolean accept(byte[] packet) {
+    if (packet.length <= HEADER_SIZE) throw new IllegalArgumentException("Packet too short: " + packet.length + " bytes");
+
+    var header = ByteBuffer.wrap(packet);
+    long index = header.getInt(0) & 0xFFFFFFFFL;
+    int length = header.getInt(4);
+    int crc = header.getInt(8);
+
+    if (payloadLength < 0) {
+      if (length < 0) throw new IllegalArgumentException("Invalid payload length: " + length);
+
+      this.payloadLength = length;
+      this.checksum = crc;
+      this.blockSize = packet.length - HEADER_SIZE;
+      this.code = new FountainCode(Math.max(1, (length + blockSize - 1) / blockSize));
+      this.rows = new long[code.getBlockCount()][];
+      this.data = new byte[code.getBlockCount()][];
+      this.kept = new long[(code.getBlockCount() + 63) >>> 6];
+    } else if (length != payloadLength || crc != checksum || packet.length - HEADER_SIZE != blockSize) {
+      throw new IllegalArgumentException("Packet " + index + " belongs to another payload");
+    }
+
+    received++;
+    if (isComplete()) return true;
+
+    var row = new long[kept.length];
+    for (int block : code.neighbours(index)) row[block >>> 6] |= 1L << block;
+
+    var values = new byte[blockSize];
+    System.arraycopy(packet, HEADER_SIZE, values, 0, blockSize);
+
+    // A kept row is clear at every other kept block, so reducing by it clears one kept
+    // block of the packet without setting another
+    for (int word = 0; word < row.length; word++) {
+      long pending;
+
+      while ((pending = row[word] & kept[word]) != 0) {
+        int block = word << 6 | Long.numberOfTrailingZeros(pending);
+
+        xor(row, rows[block]);
+        xor(values, data[block]);
+      }
+    }
+
+    int pivot = -1;
+
+    for (int word = 0; word < row.length && pivot < 0; word++) {
+      if (row[word] != 0) pivot = word << 6 | Long.numberOfTrailingZeros(row[word]);
+    }
+
+    if (pivot < 0) return false;
+
+    long bit = 1L << pivot;
+
+    for (int block = 0; block < rows.length; block++) {
+      var other = rows[block];
+
+      if (other != null && (other[pivot >>> 6] & bit) != 0) {
+        xor(other, row);
+        xor(data[block], values);
+      }
+    }
+
+    rows[pivot] = row;
+    data[pivot] = values;
+    kept[pivot >>> 6] |= bit;
+    rank++;
+
+    return isComplete();
+  }
+
+  private static void xor(long[] target, long[] source) {
+    for (int i = 0; i < target.length; i++) target[i] ^= source[i];
+  }
+
+  private static void xor(byte[] target, byte[] source) {
+    for (int i = 0; i < target.length; i++) target[i] ^= source[i];
+  }
+
+  public boolean isComplete() {
+    return code != null && rank == code.getBlockCount();
+  }
+
+  /**
+   * @return the number of packets accepted so far, duplicates included
+   */
+  public long getReceivedCount() {
+    return this.received;
+  }
+
+  /**
+   * @return the reassembled payload
+   * @throws IllegalStateException if it is not complete yet, or fails its checksum
+   */
+  public byte[] getPayload() {
+    if (!isComplete()) throw new IllegalStateException("Payload incomplete: " + rank + " of " + (code == null ? "?" : code.getBlockCount()) + " blocks");
+
+    var payload = new byte[payloadLength];
+
+    for (int i = 0, offset = 0; offset < payloadLength; i++, offset += blockSize) {
+      System.arraycopy(data[i], 0, payload, offset, Math.min(blockSize, payloadLength - offset));
+    }
+
+    var crc = new CRC32();
+    crc.update(payload);
+    if ((int) crc.getValue() != checksum) throw new IllegalStateException("Payload checksum mismatch");
+
+    return payload;
+  }
+}
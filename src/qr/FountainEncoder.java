@@ -0,0 +1,235 @@
+package qr;
+
+import org.w3c.dom.Node;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Splits a payload too large for one symbol into an endless sequence of fountain-coded
+ * frames, all of the same version. A receiver reconstructs the payload from enough distinct
+ * frames in any order, so missed frames never have to be waited for again; see
+ * {@link FountainDecoder}. Without losses the first {@link #getSourceBlockCount()} frames
+ * suffice, as they carry the source blocks as they are.
+ * <p>
+ * Each frame carries one packet in byte mode:
+ * <pre>
+ * u32 packet index | u32 payload length | u32 CRC-32 of the payload | block-sized data
+ * </pre>
+ * all big-endian. The data is the XOR of the source blocks {@link FountainCode} assigns to
+ * the index; the block size is the frame length minus the 12 header bytes.
+ * <p>
+ * Scanning throughput is about {@link #getBlockSize()} bytes per frame read; once source
+ * frames were missed, decoding takes one or two frames more than there are source blocks.
+ * Larger versions carry more per frame but scan less reliably from a screen.
+ */
+public final class FountainEncoder {
+
+  static final int HEADER_SIZE = 12;
+
+  private final byte[][] blocks;
+  private final int payloadLength;
+  private final int checksum;
+  private final int blockSize;
+  private final int version;
+  private final ErrorCorrection errorCorrection;
+  private final MaskPattern maskPattern;
+  private final FountainCode code;
+
+  private FountainEncoder(byte[] payload, int version, ErrorCorrection errorCorrection, MaskPattern maskPattern) {
+    this.version = version;
+    this.errorCorrection = errorCorrection;
+    this.maskPattern = maskPattern;
+    this.payloadLength = payload.length;
+    this.blockSize = getFrameCapacity(version, errorCorrection) - HEADER_SIZE;
+
+    if (blockSize < 1) throw new IllegalArgumentException("Version " + version + " is too small to carry packets");
+
+    var crc = new CRC32();
+    crc.update(payload);
+    this.checksum = (int) crc.getValue();
+
+    int count = Math.max(1, (payload.length + blockSize - 1) / blockSize);
+    this.blocks = new byte[count][blockSize];
+
+    for (int i = 0; i < count; i++) {
+      int offset = i * blockSize;
+      System.arraycopy(payload, offset, blocks[i], 0, Math.min(blockSize, payload.length - offset));
+    }
+
+    this.code = new FountainCode(count);
+  }
+
+  /**
+   * @param payload         the data to transfer; copied
+   * @param version         the version of every frame
+   * @param errorCorrection the error correction level of every frame
+   * @param maskPattern     the mask pattern of every frame
+   */
+  public static FountainEncoder of(byte[] payload, int version, ErrorCorrection errorCorrection, MaskPattern maskPattern) {
+    if (version < 1 || version > Encoder.VERSION_EC_CAPACITY_MAPPING.length) {
+      throw new IllegalArgumentException("Unsupported version: " + version);
+    }
+
+    return new FountainEncoder(payload, version, errorCorrection, maskPattern);
+  }
+
+  /**
+   * @return the number of bytes a frame of the given version carries in byte mode
+   */
+  static int getFrameCapacity(int version, ErrorCorrection errorCorrection) {
+    int capacityBits = Encoder.getDataCodewords(version, errorCorrection) * 8;
+    int length = (capacityBits - Encoder.getByteSegmentBits(0, version)) / 8;
+
+    while (length > 0 && Encoder.getByteSegmentBits(length, version) < 0) length--;
+
+    return length;
+  }
+
+  /**
+   * @return the packet carried by the frame at the given index, between 0 and 2<sup>32</sup> - 1
+   */
+  public byte[] packet(long index) {
+    if (index < 0 || index > 0xFFFFFFFFL) throw new IllegalArgumentException("Packet index out of range: " + index);
+
+    var packet = ByteBuffer.allocate(HEADER_SIZE + blockSize)
+        .putInt((int) index)
+        .putInt(payloadLength)
+        .putInt(checksum);
+
+    var data = packet.array();
+
+    for (int block : code.neighbours(index)) {
+      var source = blocks[block];
+      for (int i = 0; i < blockSize; i++) data[HEADER_SIZE + i] ^= source[i];
+    }
+
+    return data;
+  }
+
+  public EncodedSymbol frame(long index) {
+    var segment = Encoder.encodeBytes(packet(index), version);
+    var codewords = new byte[Encoder.getEncodedLength(version, errorCorrection)];
+    int length = Encoder.finish(segment, version, errorCorrection, codewords);
+
+    return EncodedSymbol.fromCodewords(codewords, length, version, errorCorrection, maskPattern);
+  }
+
+  /**
+   * @return an endless, lazily encoded stream of frames, starting at index 0
+   */
+  public Stream<EncodedSymbol> frames() {
+    return LongStream.rangeClosed(0, 0xFFFFFFFFL).mapToObj(this::frame);
+  }
+
+  /**
+   * @return the frames of {@link #frames()}, each drawn in the given style when rendered
+   */
+  public Stream<QRCode> codes(RenderStyle style) {
+    return frames().map(symbol -> new QRCode(symbol, style));
+  }
+
+  /**
+   * Returns a loop length for animations: the systematic frames plus as many repair frames.
+   * A receiver missing 40% of the frames then usually decodes within the first loop, and one
+   * missing 60% within the second; shorter loops keep replaying the same few frames.
+   */
+  public int getRecommendedFrameCount() {
+    int k = getSourceBlockCount();
+
+    return k + Math.max(16, k);
+  }
+
+  /**
+   * Writes the first {@code frameCount} frames as a looping animated GIF.
+   *
+   * @param frameDelayMillis how long each frame is shown; GIF timing has 10 ms resolution
+   */
+  public void writeGif(Path path, RenderStyle style, int frameCount, int frameDelayMillis) throws IOException {
+    if (frameCount < 1) throw new IllegalArgumentException("Frame count must be above 0");
+
+    var writer = ImageIO.getImageWritersByFormatName("gif").next();
+
+    // Closing the image stream leaves the stream it wraps open
+    try (var file = Files.newOutputStream(path);
+         var output = ImageIO.createImageOutputStream(file)) {
+      writer.setOutput(output);
+      writer.prepareWriteSequence(null);
+
+      for (int i = 0; i < frameCount; i++) {
+        var image = SymbolRenderer.render(frame(i), style);
+        var metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), null);
+
+        setGifTiming(metadata, frameDelayMillis, i == 0);
+        writer.writeToSequence(new IIOImage(image, null, metadata), null);
+      }
+
+      writer.endWriteSequence();
+    } finally {
+      writer.dispose();
+    }
+  }
+
+  private static void setGifTiming(IIOMetadata metadata, int frameDelayMillis, boolean first) throws IOException {
+    var format = metadata.getNativeMetadataFormatName();
+    var root = (IIOMetadataNode) metadata.getAsTree(format);
+
+    var control = child(root, "GraphicControlExtension");
+    control.setAttribute("disposalMethod", "none");
+    control.setAttribute("userInputFlag", "FALSE");
+    control.setAttribute("transparentColorFlag", "FALSE");
+    control.setAttribute("transparentColorIndex", "0");
+    control.setAttribute("delayTime", Integer.toString(Math.max(1, frameDelayMillis / 10)));
+
+    if (first) {
+      // NETSCAPE2.0 extension: loop forever
+      var loop = new IIOMetadataNode("ApplicationExtension");
+      loop.setAttribute("applicationID", "NETSCAPE");
+      loop.setAttribute("authenticationCode", "2.0");
+      loop.setUserObject(new byte[]{1, 0, 0});
+      child(root, "ApplicationExtensions").appendChild(loop);
+    }
+
+    metadata.setFromTree(format, root);
+  }
+
+  private static IIOMetadataNode child(IIOMetadataNode parent, String name) {
+    for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+      if (node.getNodeName().equals(name)) return (IIOMetadataNode) node;
+    }
+
+    var node = new IIOMetadataNode(name);
+    parent.appendChild(node);
+
+    return node;
+  }
+
+  public int getSourceBlockCount() {
+    return this.code.getBlockCount();
+  }
+
+  /**
+   * @return the number of payload bytes each frame carries
+   */
+  public int getBlockSize() {
+    return this.blockSize;
+  }
+
+  public int getVersion() {
+    return this.version;
+  }
+
+  public ErrorCorrection getErrorCorrection() {
+    return this.errorCorrection;
+  }
+}
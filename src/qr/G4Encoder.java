@@ -0,0 +1,186 @@
+package qr;
+
+import java.io.IOException;
+
+/**
+ * CCITT Group 4 (ITU-T T.6) encoder for bi-level rows given as changing elements.
+ * <p>
+ * A row is described by the pixel offsets at which its color changes, starting from an
+ * imaginary white pixel before the first column. Each row is coded relative to the one
+ * before it, so rows repeated within a module cost a single bit per color change.
+ */
+final class G4Encoder {
+
+  private static final String[] WHITE_TERMINATING = {
+      "00110101", "000111", "0111", "1000", "1011", "1100", "1110", "1111",
+      "10011", "10100", "00111", "01000", "001000", "000011", "110100", "110101",
+      "101010", "101011", "0100111", "0001100", "0001000", "0010111", "0000011", "0000100",
+      "0101000", "0101011", "0010011", "0100100", "0011000", "00000010", "00000011", "00011010",
+      "00011011", "00010010", "00010011", "00010100", "00010101", "00010110", "00010111", "00101000",
+      "00101001", "00101010", "00101011", "00101100", "00101101", "00000100", "00000101", "00001010",
+      "00001011", "01010010", "01010011", "01010100", "01010101", "00100100", "00100101", "01011000",
+      "01011001", "01011010", "01011011", "01001010", "01001011", "00110010", "00110011", "00110100"
+  };
+
+  private static final String[] BLACK_TERMINATING = {
+      "0000110111", "010", "11", "10", "011", "0011", "0010", "00011",
+      "000101", "000100", "0000100", "0000101", "0000111", "00000100", "00000111", "000011000",
+      "0000010111", "0000011000", "0000001000", "00001100111", "00001101000", "00001101100", "00000110111", "00000101000",
+      "00000010111", "00000011000", "000011001010", "000011001011", "000011001100", "000011001101", "000001101000", "000001101001",
+      "000001101010", "000001101011", "000011010010", "000011010011", "000011010100", "000011010101", "000011010110", "000011010111",
+      "000001101100", "000001101101", "000011011010", "000011011011", "000001010100", "000001010101", "000001010110", "000001010111",
+      "000001100100", "000001100101", "000001010010", "000001010011", "000000100100", "000000110111", "000000111000", "000000100111",
+      "000000101000", "000001011000", "000001011001", "000000101011", "000000101100", "000001011010", "000001100110", "000001100111"
+  };
+
+  // Run lengths 64, 128, ..., 1728
+  private static final String[] WHITE_MAKEUP = {
+      "11011", "10010", "010111", "0110111", "00110110", "00110111", "01100100", "01100101",
+      "01101000", "01100111", "011001100", "011001101", "011010010", "011010011", "011010100", "011010101",
+      "011010110", "011010111", "011011000", "011011001", "011011010", "011011011", "010011000", "010011001",
+      "010011010", "011000", "010011011"
+  };
+
+  private static final String[] BLACK_MAKEUP = {
+      "0000001111", "000011001000", "000011001001", "000001011011", "000000110011", "000000110100", "000000110101", "0000001101100",
+      "0000001101101", "0000001001010", "0000001001011", "0000001001100", "0000001001101", "0000001110010", "0000001110011", "0000001110100",
+      "0000001110101", "0000001110110", "0000001110111", "0000001010010", "0000001010011", "0000001010100", "0000001010101", "0000001011010",
+      "0000001011011", "0000001100100", "0000001100101"
+  };
+
+  // Run lengths 1792, 1856, ..., 2560, shared by both colors
+  private static final String[] EXTENDED_MAKEUP = {
+      "00000001000", "00000001100", "00000001101", "000000010010", "000000010011", "000000010100", "000000010101",
+      "000000010110", "000000010111", "000000011100", "000000011101", "000000011110", "000000011111"
+  };
+
+  // Vertical mode codes for a1 - b1 = -3 ... 3
+  private static final String[] VERTICAL = {"0000010", "000010", "010", "1", "011", "000011", "0000011"};
+
+  private static final String PASS = "0001";
+  private static final String HORIZONTAL = "001";
+  private static final String END_OF_BLOCK = "000000000001";
+
+  private static final int MAX_RUN = 2560;
+
+  /**
+   * Number of trailing width entries every row of changing elements must carry.
+   */
+  static final int SENTINELS = 3;
+
+  private static final int[] WHITE_TERMINATING_CODES = compile(WHITE_TERMINATING);
+  private static final int[] BLACK_TERMINATING_CODES = compile(BLACK_TERMINATING);
+  private static final int[] WHITE_MAKEUP_CODES = compile(WHITE_MAKEUP);
+  private static final int[] BLACK_MAKEUP_CODES = compile(BLACK_MAKEUP);
+  private static final int[] EXTENDED_MAKEUP_CODES = compile(EXTENDED_MAKEUP);
+  private static final int[] VERTICAL_CODES = compile(VERTICAL);
+  private static final int[] MODE_CODES = compile(new String[]{PASS, HORIZONTAL, END_OF_BLOCK});
+
+  private final ChannelOutput output;
+  private final int width;
+  private long bits;
+  private int bitCount;
+
+  G4Encoder(ChannelOutput output, int width) {
+    this.output = output;
+    this.width = width;
+  }
+
+  /**
+   * Encodes one row.
+   *
+   * @param coding    changing elements of the row to encode, followed by at least
+   *                  {@link #SENTINELS} copies of the width
+   * @param reference changing elements of the previous row in the same form; for the
+   *                  first row, an all-white row consisting of sentinels only
+   */
+  void encodeRow(int[] coding, int[] reference) throws IOException {
+    int a0 = -1;
+    boolean white = true;
+    int codingIndex = 0;
+    int referenceIndex = 0;
+
+    while (a0 < width) {
+      // a1: first change on the coding line right of a0
+      while (coding[codingIndex] <= a0) codingIndex++;
+      int a1 = coding[codingIndex];
+
+      // b1: first change on the reference line right of a0 with the color opposite to a0's.
+      // Changes alternate colors; even-indexed ones turn black, odd-indexed ones turn white.
+      while (reference[referenceIndex] <= a0) referenceIndex++;
+      int b1Index = (referenceIndex % 2 == 0) == white ? referenceIndex : referenceIndex + 1;
+      int b1 = reference[b1Index];
+      int b2 = reference[b1Index + 1];
+
+      if (b2 < a1) {
+        writeCode(MODE_CODES[0]);
+        a0 = b2;
+      } else if (Math.abs(a1 - b1) <= 3) {
+        writeCode(VERTICAL_CODES[a1 - b1 + 3]);
+        a0 = a1;
+        white = !white;
+      } else {
+        int a2 = coding[codingIndex + 1];
+
+        writeCode(MODE_CODES[1]);
+        writeRun(a1 - Math.max(a0, 0), white);
+        writeRun(a2 - a1, !white);
+        a0 = a2;
+      }
+    }
+  }
+
+  /**
+   * Writes the end-of-facsimile-block marker and pads to a byte boundary.
+   */
+  void finish() throws IOException {
+    writeCode(MODE_CODES[2]);
+    writeCode(MODE_CODES[2]);
+
+    if (bitCount > 0) writeBits(0, 8 - bitCount);
+  }
+
+  private void writeRun(int run, boolean white) throws IOException {
+    while (run > MAX_RUN) {
+      writeCode(EXTENDED_MAKEUP_CODES[EXTENDED_MAKEUP_CODES.length - 1]);
+      run -= MAX_RUN;
+    }
+
+    if (run >= 1792) {
+      writeCode(EXTENDED_MAKEUP_CODES[(run - 1792) / 64]);
+      run %= 64;
+    } else if (run >= 64) {
+      writeCode((white ? WHITE_MAKEUP_CODES : BLACK_MAKEUP_CODES)[run / 64 - 1]);
+      run %= 64;
+    }
+
+    writeCode((white ? WHITE_TERMINATING_CODES : BLACK_TERMINATING_CODES)[run]);
+  }
+
+  /**
+   * Parses code strings into ints holding the code above its length in the low 5 bits.
+   */
+  private static int[] compile(String[] codes) {
+    int[] compiled = new int[codes.length];
+
+    for (int i = 0; i < codes.length; i++) {
+      compiled[i] = Integer.parseInt(codes[i], 2) << 5 | codes[i].length();
+    }
+
+    return compiled;
+  }
+
+  private void writeCode(int code) throws IOException {
+    writeBits(code >>> 5, code & 0x1F);
+  }
+
+  private void writeBits(int value, int length) throws IOException {
+    bits = (bits << length) | value;
+    bitCount += length;
+
+    while (bitCount >= 8) {
+      bitCount -= 8;
+      output.put((byte) (bits >>> bitCount));
+    }
+  }
+}
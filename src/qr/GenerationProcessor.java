@@ -0,0 +1,350 @@
+package qr;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Reactive-streams stage turning a stream of payloads into encoded symbols or images.
+ * <p>
+ * Items are generated in parallel on an executor, at most {@code parallelism} at a time.
+ * Upstream demand is bounded by that same number, so the processor never buffers more
+ * than {@code parallelism} payloads or results, whatever the downstream demand. Results
+ * are emitted in arrival order unless ordering is disabled, in which case they are
+ * emitted as soon as they are ready.
+ * <p>
+ * A payload that fails to generate, e.g. one too large for the highest version, does not
+ * terminate the stream: it is reported to the item error handler and skipped, without
+ * consuming downstream demand. Only upstream errors terminate the stream, once every
+ * payload already received has been emitted.
+ * <p>
+ * The {@code set*} methods must be called before the processor is subscribed to.
+ * A processor supports a single subscriber.
+ *
+ * @param <T> the type of generated items
+ */
+public final class GenerationProcessor<T> implements Flow.Processor<String, T> {
+
+  private final Function<String, T> stage;
+  private Executor executor = ForkJoinPool.commonPool();
+  private int parallelism = Runtime.getRuntime().availableProcessors();
+  private boolean ordered = true;
+  private BiConsumer<String, Throwable> itemErrorHandler = (item, error) -> {
+  };
+
+  private final Object lock = new Object();
+  private final Map<Long, Outcome<T>> completedInOrder = new HashMap<>();
+  private final ArrayDeque<Outcome<T>> completed = new ArrayDeque<>();
+
+  private Flow.Subscription upstream;
+  private Flow.Subscriber<? super T> downstream;
+  private long demand;
+  private long pendingUpstream;
+  private long nextSequence;
+  private long nextEmittedSequence;
+  private int inFlight;
+  private boolean upstreamDone;
+  private Throwable upstreamError;
+  private Throwable downstreamError;
+  private boolean emitting;
+  private boolean terminated;
+
+  private GenerationProcessor(Function<String, T> stage) {
+    this.stage = stage;
+  }
+
+  /**
+   * Creates a processor encoding each payload into a symbol.
+   */
+  public static GenerationProcessor<EncodedSymbol> symbols(ErrorCorrection errorCorrection, MaskPattern maskPattern) {
+    return new GenerationProcessor<>(data -> EncodedSymbol.encode(data, errorCorrection, maskPattern));
+  }
+
+  /**
+   * Creates a processor encoding each payload and rendering it in the given style.
+   */
+  public static GenerationProcessor<BufferedImage> images(ErrorCorrection errorCorrection, MaskPattern maskPattern, RenderStyle style) {
+    return new GenerationProcessor<>(data -> SymbolRenderer.render(EncodedSymbol.encode(data, errorCorrection, maskPattern), style));
+  }
+
+  public GenerationProcessor<T> setExecutor(Executor executor) {
+    this.executor = executor;
+    return this;
+  }
+
+  public GenerationProcessor<T> setParallelism(int parallelism) {
+    if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be above 0");
+
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * Sets whether results are emitted in the order their payloads arrived. Defaults to true.
+   */
+  public GenerationProcessor<T> setOrdered(boolean ordered) {
+    this.ordered = ordered;
+    return this;
+  }
+
+  /**
+   * Sets the handler receiving payloads that failed to generate, together with the cause.
+   * It is called serially with the downstream signals. By default, failed payloads are
+   * skipped silently.
+   */
+  public GenerationProcessor<T> setItemErrorHandler(BiConsumer<String, Throwable> handler) {
+    this.itemErrorHandler = handler;
+    return this;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super T> subscriber) {
+    boolean accepted;
+
+    synchronized (lock) {
+      accepted = this.downstream == null;
+      if (accepted) this.downstream = subscriber;
+    }
+
+    if (!accepted) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+      });
+      subscriber.onError(new IllegalStateException("GenerationProcessor supports a single subscriber"));
+      return;
+    }
+
+    subscriber.onSubscribe(new DownstreamSubscription());
+    drain();
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    synchronized (lock) {
+      if (this.upstream == null && !this.terminated) {
+        this.upstream = subscription;
+        subscription = null;
+      }
+    }
+
+    if (subscription != null) {
+      subscription.cancel();
+      return;
+    }
+
+    requestUpstream();
+  }
+
+  @Override
+  public void onNext(String item) {
+    long sequence;
+
+    synchronized (lock) {
+      if (terminated) return;
+
+      sequence = nextSequence++;
+      pendingUpstream--;
+      inFlight++;
+    }
+
+    try {
+      executor.execute(() -> generate(sequence, item));
+    } catch (RuntimeException error) {
+      complete(new Outcome<>(sequence, item, null, error));
+    }
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    synchronized (lock) {
+      upstreamDone = true;
+      upstreamError = throwable;
+    }
+
+    drain();
+  }
+
+  @Override
+  public void onComplete() {
+    synchronized (lock) {
+      upstreamDone = true;
+    }
+
+    drain();
+  }
+
+  private void generate(long sequence, String item) {
+    Outcome<T> outcome;
+
+    try {
+      outcome = new Outcome<>(sequence, item, stage.apply(item), null);
+    } catch (Throwable error) {
+      outcome = new Outcome<>(sequence, item, null, error);
+    }
+
+    complete(outcome);
+  }
+
+  private void complete(Outcome<T> outcome) {
+    synchronized (lock) {
+      inFlight--;
+      if (terminated) return;
+
+      if (ordered) {
+        completedInOrder.put(outcome.sequence, outcome);
+      } else {
+        completed.add(outcome);
+      }
+    }
+
+    drain();
+  }
+
+  /**
+   * Requests as many payloads from upstream as there is room for in flight.
+   */
+  private void requestUpstream() {
+    Flow.Subscription subscription;
+    long n;
+
+    synchronized (lock) {
+      subscription = this.upstream;
+      if (subscription == null || downstream == null || upstreamDone || terminated) return;
+
+      n = parallelism - (pendingUpstream + inFlight + bufferedCount());
+      if (n <= 0) return;
+
+      pendingUpstream += n;
+    }
+
+    subscription.request(n);
+  }
+
+  /**
+   * Emits every result that is ready and demanded, then the terminal signal once nothing
+   * is left. Only one thread emits at a time; others leave their results for it.
+   */
+  private void drain() {
+    Flow.Subscriber<? super T> subscriber;
+
+    synchronized (lock) {
+      if (emitting || downstream == null) return;
+      emitting = true;
+      subscriber = downstream;
+    }
+
+    for (; ; ) {
+      Outcome<T> next;
+      Throwable terminalError = null;
+
+      synchronized (lock) {
+        next = terminated || downstreamError != null ? null : nextReady();
+
+        if (next == null) {
+          boolean finished = !terminated && (downstreamError != null
+              || upstreamDone && inFlight == 0 && bufferedCount() == 0);
+
+          if (!finished) {
+            emitting = false;
+            break;
+          }
+
+          terminated = true;
+          terminalError = downstreamError != null ? downstreamError : upstreamError;
+        }
+      }
+
+      if (next == null) {
+        if (terminalError != null) {
+          subscriber.onError(terminalError);
+        } else {
+          subscriber.onComplete();
+        }
+        return;
+      }
+
+      if (next.error != null) {
+        itemErrorHandler.accept(next.item, next.error);
+      } else {
+        subscriber.onNext(next.value);
+      }
+    }
+
+    requestUpstream();
+  }
+
+  /**
+   * Removes and returns the next outcome to signal, or null if none may be signalled yet.
+   * Failed outcomes do not consume demand.
+   */
+  private Outcome<T> nextReady() {
+    var next = ordered ? completedInOrder.get(nextEmittedSequence) : completed.peek();
+    if (next == null || (next.error == null && demand == 0)) return null;
+
+    if (ordered) {
+      completedInOrder.remove(nextEmittedSequence++);
+    } else {
+      completed.poll();
+    }
+
+    if (next.error == null) demand--;
+    return next;
+  }
+
+  private int bufferedCount() {
+    return ordered ? completedInOrder.size() : completed.size();
+  }
+
+  private final class DownstreamSubscription implements Flow.Subscription {
+
+    @Override
+    public void request(long n) {
+      Flow.Subscription subscription = null;
+
+      synchronized (lock) {
+        if (terminated) return;
+
+        if (n <= 0) {
+          downstreamError = new IllegalArgumentException("Requested item count must be above 0, got " + n);
+          subscription = upstream;
+        } else {
+          demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+        }
+      }
+
+      if (subscription != null) subscription.cancel();
+
+      drain();
+      requestUpstream();
+    }
+
+    @Override
+    public void cancel() {
+      Flow.Subscription subscription;
+
+      synchronized (lock) {
+        terminated = true;
+        subscription = upstream;
+        completedInOrder.clear();
+        completed.clear();
+      }
+
+      if (subscription != null) subscription.cancel();
+    }
+  }
+
+  private record Outcome<T>(long sequence, String item, T value, Throwable error) {
+  }
+}
@@ -0,0 +1,154 @@
+package qr;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JMX view of the library's process-wide metrics: symbols generated, stage latencies, bytes
+ * exported and cache hit rates. Metrics are recorded whether or not the bean is registered;
+ * call {@link #register()} once at startup to publish them as {@value #OBJECT_NAME}.
+ */
+public final class GenerationStats implements GenerationStatsMXBean {
+
+  public static final String OBJECT_NAME = "qr:type=GenerationStats";
+
+  private static final GenerationStats INSTANCE = new GenerationStats();
+
+  private GenerationStats() {
+  }
+
+  public static GenerationStats getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Registers the bean with the platform MBean server, unless it already is.
+   */
+  public static synchronized void register() {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, objectName());
+    } catch (InstanceAlreadyExistsException ignored) {
+      // Already published
+    } catch (JMException e) {
+      throw new IllegalStateException("Unable to register " + OBJECT_NAME, e);
+    }
+  }
+
+  public static synchronized void unregister() {
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName());
+    } catch (InstanceNotFoundException ignored) {
+      // Not published
+    } catch (JMException e) {
+      throw new IllegalStateException("Unable to unregister " + OBJECT_NAME, e);
+    }
+  }
+
+  private static ObjectName objectName() throws MalformedObjectNameException {
+    return new ObjectName(OBJECT_NAME);
+  }
+
+  @Override
+  public long getSymbolsGenerated() {
+    long total = 0;
+
+    for (int version = 1; version <= Metrics.getVersionCount(); version++) {
+      for (var level : ErrorCorrection.values()) total += Metrics.symbols(version, level);
+    }
+
+    return total;
+  }
+
+  @Override
+  public Map<String, Long> getSymbolsByVersionAndLevel() {
+    var symbols = new LinkedHashMap<String, Long>();
+
+    for (int version = 1; version <= Metrics.getVersionCount(); version++) {
+      for (var level : ErrorCorrection.values()) {
+        long count = Metrics.symbols(version, level);
+        if (count > 0) symbols.put(version + "-" + level.name(), count);
+      }
+    }
+
+    return symbols;
+  }
+
+  @Override
+  public StageTimings getEncode() {
+    return timings(Metrics.Stage.ENCODE);
+  }
+
+  @Override
+  public StageTimings getPlacement() {
+    return timings(Metrics.Stage.PLACEMENT);
+  }
+
+  @Override
+  public StageTimings getMasking() {
+    return timings(Metrics.Stage.MASKING);
+  }
+
+  @Override
+  public StageTimings getRender() {
+    return timings(Metrics.Stage.RENDER);
+  }
+
+  @Override
+  public StageTimings getExport() {
+    return timings(Metrics.Stage.EXPORT);
+  }
+
+  @Override
+  public long getBytesWritten() {
+    return Metrics.bytesWritten();
+  }
+
+  @Override
+  public CacheStatistics getRenderCache() {
+    return statistics(Metrics.Cache.RENDER_CACHE);
+  }
+
+  @Override
+  public CacheStatistics getModuleSprites() {
+    return statistics(Metrics.Cache.MODULE_SPRITES);
+  }
+
+  @Override
+  public CacheStatistics getScratchPool() {
+    return statistics(Metrics.Cache.SCRATCH_POOL);
+  }
+
+  @Override
+  public void resetHistograms() {
+    Metrics.resetHistograms();
+  }
+
+  private static StageTimings timings(Metrics.Stage stage) {
+    var histogram = Metrics.histogram(stage);
+    long count = histogram.getCount();
+    long total = histogram.getTotal();
+
+    return new StageTimings(
+        count,
+        total,
+        count == 0 ? 0 : total / count,
+        histogram.getQuantile(0.5),
+        histogram.getQuantile(0.99),
+        histogram.getQuantile(0.999),
+        histogram.getMax()
+    );
+  }
+
+  private static CacheStatistics statistics(Metrics.Cache cache) {
+    long hits = Metrics.hits(cache);
+    long misses = Metrics.misses(cache);
+
+    return new CacheStatistics(hits, misses, hits + misses == 0 ? 0 : (double) hits / (hits + misses));
+  }
+}
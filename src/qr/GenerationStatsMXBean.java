@@ -0,0 +1,53 @@
+package qr;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link GenerationStats}. All times are in nanoseconds.
+ */
+public interface GenerationStatsMXBean {
+
+  /**
+   * Latencies of one pipeline stage since the last reset. Percentiles are upper bounds,
+   * accurate to within a factor of two.
+   */
+  record StageTimings(long count, long totalNanos, long meanNanos, long p50Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+  }
+
+  record CacheStatistics(long hits, long misses, double hitRate) {
+  }
+
+  long getSymbolsGenerated();
+
+  /**
+   * @return the number of symbols generated per version and error correction level, keyed
+   * like {@code "7-MEDIUM"}; combinations never generated are left out
+   */
+  Map<String, Long> getSymbolsByVersionAndLevel();
+
+  StageTimings getEncode();
+
+  StageTimings getPlacement();
+
+  StageTimings getMasking();
+
+  StageTimings getRender();
+
+  StageTimings getExport();
+
+  /**
+   * @return the number of bytes written by the exporters
+   */
+  long getBytesWritten();
+
+  CacheStatistics getRenderCache();
+
+  CacheStatistics getModuleSprites();
+
+  CacheStatistics getScratchPool();
+
+  /**
+   * Clears all stage timings. Counters are left as they are.
+   */
+  void resetHistograms();
+}
@@ -0,0 +1,195 @@
+package qr;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.util.Arrays;
+
+/**
+ * Renders symbols into packed, palette-based images for styles that only ever produce
+ * their own background, active and inactive colors.
+ * <p>
+ * Pixel rows are composed as palette indices from the cached module shapes and packed at
+ * one or two bits per pixel. With square modules, every pixel row of a module row is the
+ * same, so it is packed once and copied.
+ */
+final class IndexedRenderer {
+
+  private static final int QUIET_ZONE_SIZE = SymbolWriter.QUIET_ZONE_SIZE;
+  private static final int FINDER_PATTERN_SIZE = SymbolWriter.FINDER_PATTERN_SIZE;
+
+  private final EncodedSymbol symbol;
+  private final int size;
+  private final int moduleSize;
+  private final int width;
+  private final int bitsPerPixel;
+  private final byte[] data;
+  private final int stride;
+
+  private final byte[] moduleShape;
+  private final byte[] finderShape;
+  private final byte[] finderColors;
+  private final byte background;
+  private final byte active;
+  private final byte inactive;
+
+  // Palette indices of the pixel row being composed
+  private final byte[] line;
+
+  private IndexedRenderer(EncodedSymbol symbol, RenderStyle style, Color[] palette, BufferedImage image, byte[] line) {
+    this.symbol = symbol;
+    this.size = symbol.getSize();
+    this.moduleSize = style.getModuleSize();
+    this.width = image.getWidth();
+    this.bitsPerPixel = palette.length > 2 ? 2 : 1;
+    this.data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    this.stride = ((MultiPixelPackedSampleModel) image.getSampleModel()).getScanlineStride();
+
+    this.moduleShape = ModuleSprites.moduleShape(moduleSize, style.getModuleBorderRadius());
+    this.finderShape = ModuleSprites.finderShape(moduleSize, style.getModuleBorderRadius());
+    this.background = indexOf(palette, style.getBackgroundColor());
+    this.active = indexOf(palette, style.getActiveColor());
+    this.inactive = indexOf(palette, style.getInactiveColor());
+    this.finderColors = new byte[]{background, active, inactive, active};
+
+    this.line = line != null && line.length >= width ? line : new byte[width];
+  }
+
+  /**
+   * @param line scratch buffer for one pixel row; used when it is at least as wide as the
+   *             image, otherwise a new one is allocated
+   */
+  static BufferedImage render(EncodedSymbol symbol, RenderStyle style, byte[] line) {
+    var palette = paletteOf(style);
+    int imageSize = SymbolRenderer.getImageSize(symbol, style);
+
+    var image = new BufferedImage(imageSize, imageSize, BufferedImage.TYPE_BYTE_BINARY, colorModelOf(palette));
+    new IndexedRenderer(symbol, style, palette, image, line).paint(style.getModuleBorderRadius() == 0);
+
+    return image;
+  }
+
+  private void paint(boolean square) {
+    int row = 0;
+
+    // Top quiet zone
+    Arrays.fill(line, background);
+    pack(row);
+    for (row = 1; row < QUIET_ZONE_SIZE * moduleSize; row++) copyRow(0, row);
+
+    for (int y = 0; y < size; y++) {
+      for (int r = 0; r < moduleSize; r++, row++) {
+        if (square && r > 0) {
+          copyRow(row - 1, row);
+          continue;
+        }
+
+        composeLine(y, r);
+        pack(row);
+      }
+    }
+
+    // Bottom quiet zone
+    for (; row < width; row++) copyRow(0, row);
+  }
+
+  /**
+   * Fills {@link #line} with the palette indices of pixel row {@code r} of module row {@code y}.
+   */
+  private void composeLine(int y, int r) {
+    int quietPixels = QUIET_ZONE_SIZE * moduleSize;
+    int finderPixels = FINDER_PATTERN_SIZE * moduleSize;
+    int offset = quietPixels;
+    boolean finderRow = y < FINDER_PATTERN_SIZE || y >= size - FINDER_PATTERN_SIZE;
+    int finderShapeRow = ((y < FINDER_PATTERN_SIZE ? y : y - (size - FINDER_PATTERN_SIZE)) * moduleSize + r) * finderPixels;
+
+    Arrays.fill(line, 0, quietPixels, background);
+    Arrays.fill(line, width - quietPixels, width, background);
+
+    for (int x = 0; x < size; ) {
+      boolean finder = finderRow && (x == 0 || x == size - FINDER_PATTERN_SIZE && y < FINDER_PATTERN_SIZE);
+
+      if (finder) {
+        for (int i = 0; i < finderPixels; i++) {
+          line[offset + i] = finderColors[finderShape[finderShapeRow + i]];
+        }
+
+        offset += finderPixels;
+        x += FINDER_PATTERN_SIZE;
+        continue;
+      }
+
+      byte color = symbol.isDark(x, y) ? active : inactive;
+      int shapeRow = r * moduleSize;
+
+      for (int i = 0; i < moduleSize; i++) {
+        line[offset + i] = moduleShape[shapeRow + i] != 0 ? color : background;
+      }
+
+      offset += moduleSize;
+      x++;
+    }
+  }
+
+  /**
+   * Packs {@link #line} into the given row of the image, most significant bits first.
+   */
+  private void pack(int row) {
+    int pixelsPerByte = 8 / bitsPerPixel;
+    int rowOffset = row * stride;
+
+    for (int i = 0, x = 0; i < stride; i++) {
+      int packed = 0;
+
+      for (int p = 0; p < pixelsPerByte; p++, x++) {
+        packed = (packed << bitsPerPixel) | (x < width ? line[x] : 0);
+      }
+
+      data[rowOffset + i] = (byte) packed;
+    }
+  }
+
+  private void copyRow(int from, int to) {
+    System.arraycopy(data, from * stride, data, to * stride, stride);
+  }
+
+  /**
+   * Lists the style's distinct colors, background first.
+   */
+  private static Color[] paletteOf(RenderStyle style) {
+    var background = style.getBackgroundColor();
+    var active = style.getActiveColor();
+    var inactive = style.getInactiveColor();
+
+    if (inactive.equals(background) || inactive.equals(active)) return new Color[]{background, active};
+
+    return new Color[]{background, active, inactive};
+  }
+
+  private static IndexColorModel colorModelOf(Color[] palette) {
+    int entries = palette.length;
+    var reds = new byte[entries];
+    var greens = new byte[entries];
+    var blues = new byte[entries];
+    var alphas = new byte[entries];
+
+    for (int i = 0; i < entries; i++) {
+      reds[i] = (byte) palette[i].getRed();
+      greens[i] = (byte) palette[i].getGreen();
+      blues[i] = (byte) palette[i].getBlue();
+      alphas[i] = (byte) palette[i].getAlpha();
+    }
+
+    return new IndexColorModel(entries > 2 ? 2 : 1, entries, reds, greens, blues, alphas);
+  }
+
+  private static byte indexOf(Color[] palette, Color color) {
+    for (int i = 0; i < palette.length; i++) {
+      if (palette[i].equals(color)) return (byte) i;
+    }
+
+    throw new IllegalStateException("Color missing from palette: " + color);
+  }
+}
@@ -0,0 +1,77 @@
+package qr;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two buckets. Every bucket is a {@link LongAdder},
+ * so concurrent recorders update separate cells instead of contending on one counter.
+ * <p>
+ * Percentiles are reported as the upper bound of the bucket they fall in, so they are
+ * accurate to within a factor of two. Reads are not atomic snapshots; a value recorded
+ * during a read may be partially reflected.
+ */
+final class LatencyHistogram {
+
+  // Bucket i holds values in [2^(i-1), 2^i), bucket 0 holds zero
+  private static final int BUCKETS = 64;
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder total = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  LatencyHistogram() {
+    for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+  }
+
+  void record(long nanos) {
+    if (nanos < 0) nanos = 0;
+
+    buckets[BUCKETS - Long.numberOfLeadingZeros(nanos)].increment();
+    count.increment();
+    total.add(nanos);
+    max.accumulate(nanos);
+  }
+
+  long getCount() {
+    return count.sum();
+  }
+
+  long getTotal() {
+    return total.sum();
+  }
+
+  long getMax() {
+    return max.get();
+  }
+
+  /**
+   * @param quantile the quantile to look up, between 0 and 1
+   * @return the upper bound of the bucket holding the quantile, or 0 if nothing was recorded
+   */
+  long getQuantile(double quantile) {
+    var counts = new long[BUCKETS];
+    long recorded = 0;
+
+    for (int i = 0; i < BUCKETS; i++) recorded += counts[i] = buckets[i].sum();
+    if (recorded == 0) return 0;
+
+    long rank = (long) Math.ceil(quantile * recorded), seen = 0;
+
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank && counts[i] > 0) return Math.min(i == 0 ? 0 : (1L << i) - 1, getMax());
+    }
+
+    return getMax();
+  }
+
+  void reset() {
+    for (var bucket : buckets) bucket.reset();
+
+    count.reset();
+    total.reset();
+    max.reset();
+  }
+}
@@ -0,0 +1,110 @@
+package qr;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters and stage timings of the library, published through
+ * {@link GenerationStats}. Recording is always on: every counter is striped, so the hot
+ * path pays a clock read and an uncontended add per stage, and never allocates.
+ */
+final class Metrics {
+
+  enum Stage {
+    ENCODE,
+    PLACEMENT,
+    MASKING,
+    RENDER,
+    EXPORT
+  }
+
+  enum Cache {
+    RENDER_CACHE,
+    MODULE_SPRITES,
+    SCRATCH_POOL
+  }
+
+  private static final int VERSIONS = 40;
+  private static final int LEVELS = ErrorCorrection.values().length;
+
+  private static final LatencyHistogram[] STAGES = new LatencyHistogram[Stage.values().length];
+  private static final LongAdder[] SYMBOLS = new LongAdder[VERSIONS * LEVELS];
+  private static final LongAdder[] HITS = new LongAdder[Cache.values().length];
+  private static final LongAdder[] MISSES = new LongAdder[Cache.values().length];
+  private static final LongAdder BYTES_WRITTEN = new LongAdder();
+
+  static {
+    for (int i = 0; i < STAGES.length; i++) STAGES[i] = new LatencyHistogram();
+    for (int i = 0; i < SYMBOLS.length; i++) SYMBOLS[i] = new LongAdder();
+
+    for (int i = 0; i < HITS.length; i++) {
+      HITS[i] = new LongAdder();
+      MISSES[i] = new LongAdder();
+    }
+  }
+
+  private Metrics() {
+  }
+
+  /**
+   * @return the start time to pass to {@link #record}
+   */
+  static long start() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Records the time elapsed since {@code start} for the given stage.
+   *
+   * @return the current time, to chain into the next stage
+   */
+  static long record(Stage stage, long start) {
+    long now = System.nanoTime();
+    STAGES[stage.ordinal()].record(now - start);
+
+    return now;
+  }
+
+  static void symbolGenerated(int version, ErrorCorrection errorCorrection) {
+    SYMBOLS[(version - 1) * LEVELS + errorCorrection.ordinal()].increment();
+  }
+
+  static void bytesWritten(long bytes) {
+    BYTES_WRITTEN.add(bytes);
+  }
+
+  static void hit(Cache cache) {
+    HITS[cache.ordinal()].increment();
+  }
+
+  static void miss(Cache cache) {
+    MISSES[cache.ordinal()].increment();
+  }
+
+  static LatencyHistogram histogram(Stage stage) {
+    return STAGES[stage.ordinal()];
+  }
+
+  static long symbols(int version, ErrorCorrection errorCorrection) {
+    return SYMBOLS[(version - 1) * LEVELS + errorCorrection.ordinal()].sum();
+  }
+
+  static long bytesWritten() {
+    return BYTES_WRITTEN.sum();
+  }
+
+  static long hits(Cache cache) {
+    return HITS[cache.ordinal()].sum();
+  }
+
+  static long misses(Cache cache) {
+    return MISSES[cache.ordinal()].sum();
+  }
+
+  static int getVersionCount() {
+    return VERSIONS;
+  }
+
+  static void resetHistograms() {
+    for (var histogram : STAGES) histogram.reset();
+  }
+}
@@ -0,0 +1,170 @@
+package qr;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Process-wide cache of pre-rasterized module shapes. Each shape is drawn with Java2D once
+ * per (module size, radius, colors) and afterwards copied into rasters row by row, so
+ * rounded styles cost the same as square ones.
+ */
+final class ModuleSprites {
+
+  private static final int MAX_CACHED_SPRITES = 256;
+
+  private static final Map<Key, int[]> CACHE = new ConcurrentHashMap<>();
+  private static final Map<Key, byte[]> SHAPES = new ConcurrentHashMap<>();
+
+  private ModuleSprites() {
+  }
+
+  /**
+   * Returns the ARGB pixels of a single module square, {@code moduleSize} pixels wide.
+   * The returned array is shared and must not be modified.
+   */
+  static int[] module(int moduleSize, int radius, Color color, Color background) {
+    return cached(
+        new Key(moduleSize, radius, 1, color.getRGB(), color.getRGB(), background.getRGB()),
+        key -> rasterize(key, new int[][]{{0, 1}}, new Color[]{color}, background)
+    );
+  }
+
+  /**
+   * Returns the ARGB pixels of a complete finder pattern, drawn as three nested shapes.
+   * The returned array is shared and must not be modified.
+   */
+  static int[] finder(int moduleSize, int radius, Color active, Color inactive, Color background) {
+    int cells = SymbolWriter.FINDER_PATTERN_SIZE;
+    int inner = SymbolWriter.FINDER_PATTERN_INNER_SIZE;
+    int centerOffset = (cells - inner) / 2;
+
+    return cached(
+        new Key(moduleSize, radius, cells, active.getRGB(), inactive.getRGB(), background.getRGB()),
+        key -> rasterize(
+            key,
+            new int[][]{{0, cells}, {centerOffset / 2, (cells + inner) / 2}, {centerOffset, inner}},
+            new Color[]{active, inactive, active},
+            background
+        )
+    );
+  }
+
+  /**
+   * Returns the coverage of a single module shape, {@code moduleSize} pixels wide: 1 where
+   * the module is drawn, 0 where the background shows through its rounded corners.
+   * The returned array is shared and must not be modified.
+   */
+  static byte[] moduleShape(int moduleSize, int radius) {
+    return SHAPES.computeIfAbsent(new Key(moduleSize, radius, 1, 0, 0, 0), key -> {
+      var pixels = rasterize(key, new int[][]{{0, 1}}, new Color[]{new Color(1)}, new Color(0));
+      return toShape(pixels);
+    });
+  }
+
+  /**
+   * Returns the layers of a finder pattern shape: 0 for background, then 1, 2 and 3 for
+   * the outer, middle and inner squares, so 1 and 3 take the active color and 2 the
+   * inactive one. The returned array is shared and must not be modified.
+   */
+  static byte[] finderShape(int moduleSize, int radius) {
+    return SHAPES.computeIfAbsent(new Key(moduleSize, radius, SymbolWriter.FINDER_PATTERN_SIZE, 0, 0, 0), key -> {
+      var pixels = finder(moduleSize, radius, new Color(1), new Color(2), new Color(0));
+      var layers = toShape(pixels);
+
+      // The inner square is drawn in the active color as well; tell it apart by position
+      int inner = SymbolWriter.FINDER_PATTERN_INNER_SIZE * moduleSize;
+      int offset = (SymbolWriter.FINDER_PATTERN_SIZE - SymbolWriter.FINDER_PATTERN_INNER_SIZE) / 2 * moduleSize;
+      int stride = SymbolWriter.FINDER_PATTERN_SIZE * moduleSize;
+
+      for (int y = offset; y < offset + inner; y++) {
+        for (int x = offset; x < offset + inner; x++) {
+          if (layers[y * stride + x] == 1) layers[y * stride + x] = 3;
+        }
+      }
+
+      return layers;
+    });
+  }
+
+  private static byte[] toShape(int[] pixels) {
+    var shape = new byte[pixels.length];
+
+    for (int i = 0; i < pixels.length; i++) {
+      shape[i] = (byte) (pixels[i] & 0xFF);
+    }
+
+    return shape;
+  }
+
+  private static int[] cached(Key key, Function<Key, int[]> rasterizer) {
+    var sprite = CACHE.get(key);
+
+    if (sprite != null) {
+      Metrics.hit(Metrics.Cache.MODULE_SPRITES);
+      return sprite;
+    }
+
+    Metrics.miss(Metrics.Cache.MODULE_SPRITES);
+
+    // Styles are few in practice; a full reset keeps the cache bounded without bookkeeping.
+    if (CACHE.size() >= MAX_CACHED_SPRITES) CACHE.clear();
+
+    return CACHE.computeIfAbsent(key, rasterizer);
+  }
+
+  /**
+   * Copies a square sprite into an ARGB raster.
+   *
+   * @param sprite     the sprite pixels
+   * @param spriteSize the width and height of the sprite in pixels
+   * @param raster     the destination pixels
+   * @param stride     the width of the destination in pixels
+   * @param x          the destination column of the sprite's left edge
+   * @param y          the destination row of the sprite's top edge
+   */
+  static void stamp(int[] sprite, int spriteSize, int[] raster, int stride, int x, int y) {
+    for (int row = 0, offset = y * stride + x; row < spriteSize; row++, offset += stride) {
+      System.arraycopy(sprite, row * spriteSize, raster, offset, spriteSize);
+    }
+  }
+
+  /**
+   * Draws nested squares, each given as {offset, cells}, on top of the background.
+   */
+  private static int[] rasterize(Key key, int[][] layers, Color[] colors, Color background) {
+    int pixels = key.moduleSize * key.cells;
+    var image = new BufferedImage(pixels, pixels, BufferedImage.TYPE_INT_ARGB);
+    var gfx = image.createGraphics();
+
+    try {
+      gfx.setColor(background);
+      gfx.fillRect(0, 0, pixels, pixels);
+
+      for (int i = 0; i < layers.length; i++) {
+        int offset = layers[i][0] * key.moduleSize;
+        int cells = layers[i][1];
+        int size = cells * key.moduleSize;
+        int arc = key.radius * 2 * cells;
+
+        gfx.setColor(colors[i]);
+
+        if (arc == 0) {
+          gfx.fillRect(offset, offset, size, size);
+        } else {
+          gfx.fillRoundRect(offset, offset, size, size, arc, arc);
+        }
+      }
+    } finally {
+      gfx.dispose();
+    }
+
+    return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+  }
+
+  private record Key(int moduleSize, int radius, int cells, int first, int second, int background) {
+  }
+}
@@ -2,6 +2,9 @@ package qr;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 public class QRCodeBuilder {
   private ErrorCorrection errorCorrection = ErrorCorrection.LOW;
@@ -13,6 +16,8 @@ public class QRCodeBuilder {
   private Color activeColor = Color.BLACK;
   private Color inactiveColor = Color.WHITE;
   private Color backgroundColor = Color.WHITE;
+  private Executor executor = ForkJoinPool.commonPool();
+  private AdmissionControl admissionControl = AdmissionControl.defaults();
 
   public QRCodeBuilder() {
   }
@@ -44,6 +49,13 @@ public class QRCodeBuilder {
     return this;
   }
 
+  /**
+   * Sets an image to draw in the center of the code. The modules beneath it are cleared,
+   * so the area is sized to what the error correction level can restore; a higher level
+   * leaves room for a larger image. Where the smallest version fitting the data leaves no
+   * room at all, such as version 1 at {@link ErrorCorrection#LOW}, the next version that
+   * does is used.
+   */
   public QRCodeBuilder setEmbeddedImage(BufferedImage image) {
     this.embeddedImage = image;
     return this;
@@ -64,17 +76,131 @@ public class QRCodeBuilder {
     return this;
   }
 
+  /**
+   * Sets the executor that {@link #buildAsync()} and {@link #renderAsync()} run on.
+   * Defaults to the common fork-join pool.
+   */
+  public QRCodeBuilder setExecutor(Executor executor) {
+    this.executor = executor;
+    return this;
+  }
+
+  /**
+   * Sets the admission control limiting how much asynchronous work may be pending.
+   * Defaults to {@link AdmissionControl#defaults()}.
+   */
+  public QRCodeBuilder setAdmissionControl(AdmissionControl admissionControl) {
+    this.admissionControl = admissionControl;
+    return this;
+  }
+
+  /**
+   * Encodes the configured data without rendering it, in a version with room for the
+   * embedded image if one is set.
+   */
+  public EncodedSymbol buildSymbol() {
+    return encodeStages(null, data, errorCorrection, maskPattern, embeddedImage != null);
+  }
+
+  /**
+   * Captures the configured visual settings as an immutable style.
+   */
+  public RenderStyle buildStyle() {
+    return RenderStyle.defaults()
+        .withModuleSize(moduleSize)
+        .withModuleBorderRadius(moduleRadius)
+        .withActiveColor(activeColor)
+        .withInactiveColor(inactiveColor)
+        .withBackgroundColor(backgroundColor)
+        .withEmbeddedImage(embeddedImage);
+  }
+
   public QRCode build() {
-    return new QRCode(
-        data,
-        errorCorrection,
-        maskPattern,
-        embeddedImage,
-        moduleSize,
-        moduleRadius,
-        activeColor,
-        inactiveColor,
-        backgroundColor
-    );
+    return new QRCode(buildSymbol(), buildStyle());
+  }
+
+  /**
+   * Derives the {@link RenderCache} key of the configured code in the given output format,
+   * covering the data and every visual setting. The embedded image counts by its pixels.
+   *
+   * @param format the output format, such as {@code "png"}
+   */
+  public CacheKey cacheKey(String format) {
+    return new CacheKey.Builder()
+        .putString(format)
+        .putString(data)
+        .putString(errorCorrection.name())
+        .putString(maskPattern.name())
+        .putInt(moduleSize)
+        .putInt(moduleRadius)
+        .putColor(activeColor)
+        .putColor(inactiveColor)
+        .putColor(backgroundColor)
+        .putImage(embeddedImage)
+        .build();
+  }
+
+  /**
+   * Captures the configured error correction, mask pattern and style in a thread-safe
+   * engine that generates codes for any data. The configured data is ignored.
+   */
+  public QREngine buildEngine() {
+    return new QREngine(errorCorrection, maskPattern, buildStyle());
+  }
+
+  /**
+   * Encodes the configured data on the configured executor. The builder's settings are
+   * captured when this method is called, so the builder may be reused right away.
+   * <p>
+   * The returned future fails with a {@link java.util.concurrent.RejectedExecutionException}
+   * when the admission control is saturated. Cancelling it stops the work before the next
+   * pipeline stage starts.
+   */
+  public CompletableFuture<QRCode> buildAsync() {
+    var data = this.data;
+    var errorCorrection = this.errorCorrection;
+    var maskPattern = this.maskPattern;
+    var style = buildStyle();
+    boolean embedsImage = style.getEmbeddedImage() != null;
+
+    return admissionControl.submit(executor, future -> {
+      var symbol = encodeStages(future, data, errorCorrection, maskPattern, embedsImage);
+
+      return symbol == null ? null : new QRCode(symbol, style);
+    });
+  }
+
+  /**
+   * Encodes and renders the configured data on the configured executor.
+   *
+   * @see #buildAsync()
+   */
+  public CompletableFuture<BufferedImage> renderAsync() {
+    var data = this.data;
+    var errorCorrection = this.errorCorrection;
+    var maskPattern = this.maskPattern;
+    var style = buildStyle();
+    boolean embedsImage = style.getEmbeddedImage() != null;
+
+    return admissionControl.submit(executor, future -> {
+      var symbol = encodeStages(future, data, errorCorrection, maskPattern, embedsImage);
+      if (symbol == null || future.isDone()) return null;
+
+      return SymbolRenderer.render(symbol, style);
+    });
+  }
+
+  /**
+   * Runs the encoding stages, returning null as soon as the future, if any, was cancelled.
+   */
+  private static EncodedSymbol encodeStages(CompletableFuture<?> future, String data, ErrorCorrection errorCorrection,
+                                            MaskPattern maskPattern, boolean embedsImage) {
+    int version = Version.fromData(data, errorCorrection);
+    if (embedsImage) version = EmbeddedImages.getVersion(version, errorCorrection);
+
+    byte[] codewords = Encoder.encode(data, version, errorCorrection);
+    if (future != null && future.isDone()) return null;
+
+    return EncodedSymbol.fromCodewords(codewords, version, errorCorrection, maskPattern);
   }
 }
@@ -0,0 +1,101 @@
+package qr;
+
+import java.awt.image.BufferedImage;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Immutable, thread-safe generator configured once and shared by any number of threads,
+ * for instance as a singleton in a server. Create one through {@link QRCodeBuilder#buildEngine()}.
+ * <p>
+ * The version layouts are computed up front, and module sprites are shared with every other
+ * engine. Each call borrows its codeword and pixel row buffers from a pool striped by
+ * thread, so concurrent calls neither contend nor allocate that scratch state again. The
+ * pool suits virtual threads as well: buffers are held only while a call runs.
+ */
+public final class QREngine {
+
+  private final ErrorCorrection errorCorrection;
+  private final MaskPattern maskPattern;
+  private final RenderStyle style;
+  private final ScratchPool scratchPool;
+
+  QREngine(ErrorCorrection errorCorrection, MaskPattern maskPattern, RenderStyle style) {
+    if (errorCorrection == null || maskPattern == null || style == null) {
+      throw new IllegalArgumentException("Error correction, mask pattern and style are required");
+    }
+
+    this.errorCorrection = errorCorrection;
+    this.maskPattern = maskPattern;
+    this.style = style;
+    this.scratchPool = new ScratchPool(Runtime.getRuntime().availableProcessors() * 2);
+
+    for (int version = 1; version <= Encoder.VERSION_EC_CAPACITY_MAPPING.length; version++) {
+      VersionLayout.of(version);
+    }
+  }
+
+  /**
+   * Encodes the given data without rendering it.
+   *
+   * @throws IllegalArgumentException if the data does not fit in the highest supported version
+   */
+  public EncodedSymbol encode(String data) {
+    var scratch = scratchPool.acquire();
+
+    try {
+      return encode(data, scratch);
+    } finally {
+      scratchPool.release(scratch);
+    }
+  }
+
+  /**
+   * Encodes the given data into a code drawn in this engine's style. The image is rendered
+   * when first requested from the returned code.
+   *
+   * @throws IllegalArgumentException if the data does not fit in the highest supported version
+   */
+  public QRCode generate(String data) {
+    return new QRCode(encode(data), style);
+  }
+
+  /**
+   * Encodes and renders the given data in this engine's style.
+   *
+   * @return a freshly allocated image containing the symbol
+   * @throws IllegalArgumentException if the data does not fit in the highest supported version
+   */
+  public BufferedImage render(String data) {
+    var scratch = scratchPool.acquire();
+
+    try {
+      var symbol = encode(data, scratch);
+
+      return SymbolRenderer.render(symbol, style, scratch.line(SymbolRenderer.getImageSize(symbol, style)));
+    } finally {
+      scratchPool.release(scratch);
+    }
+  }
+
+  private EncodedSymbol encode(String data, ScratchPool.Scratch scratch) {
+    int version = Version.fromData(data, errorCorrection);
+    if (style.getEmbeddedImage() != null) version = EmbeddedImages.getVersion(version, errorCorrection);
+
+    byte[] codewords = scratch.codewords(Encoder.getEncodedLength(version, errorCorrection));
+    int length = Encoder.encode(data, version, errorCorrection, StandardCharsets.UTF_8, codewords);
+
+    return EncodedSymbol.fromCodewords(codewords, length, version, errorCorrection, maskPattern);
+  }
+
+  public ErrorCorrection getErrorCorrection() {
+    return this.errorCorrection;
+  }
+
+  public MaskPattern getMaskPattern() {
+    return this.maskPattern;
+  }
+
+  public RenderStyle getStyle() {
+    return this.style;
+  }
+}
@@ -0,0 +1,385 @@
+package qr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Persistent, content-addressed cache of rendered outputs such as PNG files, shared by every
+ * process that opens the same directory in turn. Keys come from {@link QRCodeBuilder#cacheKey(String)}.
+ * <pre>
+ * byte[] png = cache.computeIfAbsent(builder.cacheKey("png"), () -> encodePng(builder.build()));
+ * </pre>
+ * Records are appended to segment files and located through a memory-mapped
+ * {@link CacheIndex}. Once the segments exceed the size limit, the oldest segments are
+ * dropped as a whole. {@link #compact()} reclaims the space of removed and orphaned
+ * records; schedule it periodically if entries are removed often.
+ * <p>
+ * Reads run concurrently; writes, eviction and compaction are exclusive. A directory must
+ * not be opened by more than one cache at a time.
+ */
+public final class RenderCache implements Closeable {
+
+  /**
+   * Produces the bytes to cache on a miss.
+   */
+  @FunctionalInterface
+  public interface Renderer {
+    byte[] render() throws IOException;
+  }
+
+  private static final String INDEX_FILE = "index.dat";
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".dat";
+
+  private static final int RECORD_MAGIC = 0x51524345; // "QRCE"
+  private static final int RECORD_HEADER_SIZE = 4 + CacheKey.SIZE + 4;
+
+  private static final long MIN_SEGMENT_SIZE = 1 << 20;
+  private static final long MAX_SEGMENT_SIZE = 1 << 30;
+  private static final int SEGMENTS_PER_LIMIT = 8;
+
+  private final Path directory;
+  private final long maxBytes;
+  private final long segmentSize;
+  private final CacheIndex index;
+  private final TreeMap<Integer, FileChannel> segments = new TreeMap<>();
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private long totalBytes;
+  private int activeSegment;
+
+  private RenderCache(Path directory, long maxBytes, CacheIndex index) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    this.segmentSize = Math.min(MAX_SEGMENT_SIZE, Math.max(MIN_SEGMENT_SIZE, maxBytes / SEGMENTS_PER_LIMIT));
+    this.index = index;
+  }
+
+  /**
+   * Opens the cache stored in the given directory, creating it if needed. The index is
+   * restored from the segments if it is missing or unreadable.
+   *
+   * @param directory the directory holding the cache files
+   * @param maxBytes  the size the segment files are kept under; at least 1 MiB, as segments
+   *                  are evicted whole and never made smaller than that
+   * @throws IllegalArgumentException if {@code maxBytes} is below 1 MiB
+   */
+  public static RenderCache open(Path directory, long maxBytes) throws IOException {
+    if (maxBytes < MIN_SEGMENT_SIZE) {
+      throw new IllegalArgumentException("Maximum size must be at least " + MIN_SEGMENT_SIZE + " bytes");
+    }
+
+    Files.createDirectories(directory);
+
+    var cache = new RenderCache(directory, maxBytes, CacheIndex.open(directory.resolve(INDEX_FILE)));
+
+    try {
+      cache.openSegments();
+    } catch (IOException | RuntimeException e) {
+      cache.close();
+      throw e;
+    }
+
+    return cache;
+  }
+
+  private void openSegments() throws IOException {
+    try (var files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (var file : files) {
+        var name = file.getFileName().toString();
+        int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+
+        var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segments.put(id, channel);
+        totalBytes += channel.size();
+      }
+    }
+
+    if (index.wasCreated()) {
+      for (var segment : segments.entrySet()) restore(segment.getKey(), segment.getValue());
+    } else {
+      // Forget entries of segments deleted after the index was last written
+      for (int slot = 0; slot < index.getCapacity(); slot++) {
+        if (index.isLive(slot) && !segments.containsKey(index.segmentAt(slot))) index.remove(slot);
+      }
+    }
+
+    activeSegment = segments.isEmpty() ? 0 : segments.lastKey();
+    if (segments.isEmpty()) openSegment(activeSegment);
+  }
+
+  /**
+   * Re-indexes every record of a segment, truncating it at the first incomplete record.
+   */
+  private void restore(int segment, FileChannel channel) throws IOException {
+    var header = ByteBuffer.allocate(RECORD_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    var digest = new byte[CacheKey.SIZE];
+    long position = 0, size = channel.size();
+
+    while (position + RECORD_HEADER_SIZE <= size) {
+      channel.read(header.clear(), position);
+      header.flip();
+
+      int length = header.getInt(4 + CacheKey.SIZE);
+      if (header.getInt(0) != RECORD_MAGIC || length < 0 || position + RECORD_HEADER_SIZE + length > size) break;
+
+      header.get(4, digest);
+      var key = CacheKey.fromBytes(digest);
+      index.put(key.high(), key.low(), segment, (int) position, length);
+
+      position += RECORD_HEADER_SIZE + length;
+    }
+
+    if (position < size) {
+      totalBytes -= size - position;
+      channel.truncate(position);
+    }
+  }
+
+  /**
+   * @return the cached bytes, or null on a miss
+   */
+  public byte[] get(CacheKey key) throws IOException {
+    lock.readLock().lock();
+
+    try {
+      int slot = index.find(key.high(), key.low());
+      var data = slot < 0 ? null : read(key, index.segmentAt(slot), index.positionAt(slot), index.lengthAt(slot));
+
+      if (data != null) Metrics.hit(Metrics.Cache.RENDER_CACHE);
+      else Metrics.miss(Metrics.Cache.RENDER_CACHE);
+
+      return data;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Stores the given bytes under the key. Outputs larger than a segment are not cached.
+   */
+  public void put(CacheKey key, byte[] data) throws IOException {
+    if (RECORD_HEADER_SIZE + (long) data.length > segmentSize) return;
+
+    lock.writeLock().lock();
+
+    try {
+      if (index.find(key.high(), key.low()) >= 0) return;
+
+      append(key, data);
+      evict();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the cached bytes for the key, rendering and storing them on a miss. Concurrent
+   * misses on the same key may each render; the first result stored wins.
+   */
+  public byte[] computeIfAbsent(CacheKey key, Renderer renderer) throws IOException {
+    var cached = get(key);
+    if (cached != null) return cached;
+
+    var rendered = renderer.render();
+    put(key, rendered);
+
+    return rendered;
+  }
+
+  /**
+   * Removes the entry of the given key. Its bytes are reclaimed by the next {@link #compact()}.
+   *
+   * @return whether an entry was removed
+   */
+  public boolean remove(CacheKey key) {
+    lock.writeLock().lock();
+
+    try {
+      int slot = index.find(key.high(), key.low());
+      if (slot < 0) return false;
+
+      index.remove(slot);
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Rewrites the live records of every segment that is less than half live into the active
+   * segment, then deletes it. Records no longer referenced by the index, left behind by
+   * {@link #remove} or by a crash between appending and indexing, are dropped this way.
+   */
+  public void compact() throws IOException {
+    lock.writeLock().lock();
+
+    try {
+      var liveBytes = new TreeMap<Integer, Long>();
+
+      for (int slot = 0; slot < index.getCapacity(); slot++) {
+        if (index.isLive(slot)) liveBytes.merge(index.segmentAt(slot), RECORD_HEADER_SIZE + (long) index.lengthAt(slot), Long::sum);
+      }
+
+      for (var segment : new TreeMap<>(segments).entrySet()) {
+        int id = segment.getKey();
+        if (id == activeSegment) continue;
+        if (liveBytes.getOrDefault(id, 0L) * 2 > segment.getValue().size()) continue;
+
+        for (int slot = 0; slot < index.getCapacity(); slot++) {
+          if (!index.isLive(slot) || index.segmentAt(slot) != id) continue;
+
+          var record = readRecord(id, index.positionAt(slot), index.lengthAt(slot));
+          int[] location = appendRecord(record);
+          index.relocate(slot, location[0], location[1]);
+        }
+
+        deleteSegment(id);
+      }
+
+      index.flush();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return the total size of the segment files in bytes
+   */
+  public long getSize() {
+    lock.readLock().lock();
+
+    try {
+      return this.totalBytes;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public int getEntryCount() {
+    lock.readLock().lock();
+
+    try {
+      return index.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private byte[] read(CacheKey key, int segment, int position, int length) throws IOException {
+    var record = readRecord(segment, position, length);
+    if (record == null) return null;
+
+    // A mismatch means the slot only shares the indexed half of the key, or the segment is stale
+    var digest = new byte[CacheKey.SIZE];
+    record.get(4, digest);
+    if (record.getInt(0) != RECORD_MAGIC || !key.matches(digest)) return null;
+
+    var data = new byte[length];
+    record.get(RECORD_HEADER_SIZE, data);
+
+    return data;
+  }
+
+  /**
+   * @return the complete record, header included, or null if its segment is gone
+   */
+  private ByteBuffer readRecord(int segment, int position, int length) throws IOException {
+    var channel = segments.get(segment);
+    if (channel == null) return null;
+
+    var record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length).order(ByteOrder.LITTLE_ENDIAN);
+
+    while (record.hasRemaining()) {
+      if (channel.read(record, position + record.position()) < 0) return null;
+    }
+
+    return record.flip();
+  }
+
+  private void append(CacheKey key, byte[] data) throws IOException {
+    var record = ByteBuffer.allocate(RECORD_HEADER_SIZE + data.length).order(ByteOrder.LITTLE_ENDIAN);
+    record.putInt(RECORD_MAGIC).put(key.toBytes()).putInt(data.length).put(data).flip();
+
+    int[] location = appendRecord(record);
+    index.put(key.high(), key.low(), location[0], location[1], data.length);
+  }
+
+  /**
+   * Appends a complete record to the active segment, starting a new one when it is full.
+   *
+   * @return the segment and position the record was written at
+   */
+  private int[] appendRecord(ByteBuffer record) throws IOException {
+    var channel = segments.get(activeSegment);
+
+    if (channel.size() > 0 && channel.size() + record.remaining() > segmentSize) {
+      channel.force(false);
+      channel = openSegment(++activeSegment);
+    }
+
+    long position = channel.size();
+    int length = record.remaining();
+
+    while (record.hasRemaining()) channel.write(record, position + record.position());
+    totalBytes += length;
+
+    return new int[]{activeSegment, (int) position};
+  }
+
+  /**
+   * Drops the oldest segments while the cache exceeds its size limit.
+   */
+  private void evict() throws IOException {
+    while (totalBytes > maxBytes && segments.size() > 1) {
+      int oldest = segments.firstKey();
+
+      index.removeSegment(oldest);
+      deleteSegment(oldest);
+    }
+  }
+
+  private FileChannel openSegment(int id) throws IOException {
+    var channel = FileChannel.open(segmentPath(id), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    segments.put(id, channel);
+
+    return channel;
+  }
+
+  private void deleteSegment(int id) throws IOException {
+    var channel = segments.remove(id);
+    totalBytes -= channel.size();
+    channel.close();
+
+    Files.deleteIfExists(segmentPath(id));
+  }
+
+  private Path segmentPath(int id) {
+    return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+  }
+
+  @Override
+  public void close() throws IOException {
+    lock.writeLock().lock();
+
+    try {
+      for (var channel : segments.values()) {
+        channel.force(false);
+        channel.close();
+      }
+
+      segments.clear();
+      index.close();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+}
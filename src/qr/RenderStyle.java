@@ -0,0 +1,101 @@
+package qr;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Immutable set of parameters controlling how an {@link EncodedSymbol} is turned into pixels.
+ * Every {@code with*} method returns a copy with a single parameter changed, so one style
+ * can serve as the base for several variants (e.g. scales or color themes).
+ */
+public final class RenderStyle {
+
+  private static final RenderStyle DEFAULT = new RenderStyle(1, 0, Color.BLACK, Color.WHITE, Color.WHITE, null);
+
+  private final int moduleSize;
+  private final int moduleBorderRadius;
+  private final Color activeColor;
+  private final Color inactiveColor;
+  private final Color backgroundColor;
+  private final BufferedImage embeddedImage;
+
+  private RenderStyle(
+      int moduleSize,
+      int moduleBorderRadius,
+      Color activeColor,
+      Color inactiveColor,
+      Color backgroundColor,
+      BufferedImage embeddedImage
+  ) {
+    if (moduleSize < 1) throw new IllegalArgumentException("Size must be above 0");
+
+    this.moduleSize = moduleSize;
+    this.moduleBorderRadius = moduleBorderRadius;
+    this.activeColor = activeColor;
+    this.inactiveColor = inactiveColor;
+    this.backgroundColor = backgroundColor;
+    this.embeddedImage = embeddedImage;
+  }
+
+  /**
+   * @return black modules on white, one pixel per module, square corners
+   */
+  public static RenderStyle defaults() {
+    return DEFAULT;
+  }
+
+  public RenderStyle withModuleSize(int moduleSize) {
+    return new RenderStyle(moduleSize, moduleBorderRadius, activeColor, inactiveColor, backgroundColor, embeddedImage);
+  }
+
+  public RenderStyle withModuleBorderRadius(int radius) {
+    return new RenderStyle(moduleSize, radius, activeColor, inactiveColor, backgroundColor, embeddedImage);
+  }
+
+  public RenderStyle withActiveColor(Color color) {
+    return new RenderStyle(moduleSize, moduleBorderRadius, color, inactiveColor, backgroundColor, embeddedImage);
+  }
+
+  public RenderStyle withInactiveColor(Color color) {
+    return new RenderStyle(moduleSize, moduleBorderRadius, activeColor, color, backgroundColor, embeddedImage);
+  }
+
+  public RenderStyle withBackgroundColor(Color color) {
+    return new RenderStyle(moduleSize, moduleBorderRadius, activeColor, inactiveColor, color, embeddedImage);
+  }
+
+  /**
+   * Embeds the image in the center of rendered symbols, in place of as many data modules as
+   * the error correction level can restore. Rendering fails for symbols too small to spare
+   * any, such as version 1 with {@link ErrorCorrection#LOW}.
+   *
+   * @param image the image to embed, or {@code null} for none
+   */
+  public RenderStyle withEmbeddedImage(BufferedImage image) {
+    return new RenderStyle(moduleSize, moduleBorderRadius, activeColor, inactiveColor, backgroundColor, image);
+  }
+
+  public int getModuleSize() {
+    return this.moduleSize;
+  }
+
+  public int getModuleBorderRadius() {
+    return this.moduleBorderRadius;
+  }
+
+  public Color getActiveColor() {
+    return this.activeColor;
+  }
+
+  public Color getInactiveColor() {
+    return this.inactiveColor;
+  }
+
+  public Color getBackgroundColor() {
+    return this.backgroundColor;
+  }
+
+  public BufferedImage getEmbeddedImage() {
+    return this.embeddedImage;
+  }
+}
@@ -0,0 +1,100 @@
+package qr;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Small lock-free pool of scratch buffers, striped by thread.
+ * <p>
+ * A {@link ThreadLocal} would hand every virtual thread a buffer of its own and drop it with
+ * the thread. Here a caller takes a buffer from the slot its thread hashes to, or from one of
+ * the next few, and puts it back when done. The number of live buffers is bounded by the
+ * number of callers actually running at once; callers that find no free buffer get a fresh
+ * one, which is kept only if a slot is free on release.
+ */
+final class ScratchPool {
+
+  private static final int PROBES = 4;
+
+  /**
+   * Reusable buffers for one encode-and-render call or export. The buffers only grow.
+   */
+  static final class Scratch {
+    private byte[] codewords = new byte[0];
+    private byte[] line = new byte[0];
+    private ByteBuffer output;
+
+    /**
+     * @return a codeword buffer of at least the given length
+     */
+    byte[] codewords(int length) {
+      if (codewords.length < length) codewords = new byte[length];
+
+      return codewords;
+    }
+
+    /**
+     * @return a pixel row buffer of at least the given width
+     */
+    byte[] line(int width) {
+      if (line.length < width) line = new byte[width];
+
+      return line;
+    }
+
+    /**
+     * @return a direct output buffer of at least the given capacity, allocated on first use
+     */
+    ByteBuffer output(int capacity) {
+      if (output == null || output.capacity() < capacity) output = ByteBuffer.allocateDirect(capacity);
+
+      return output;
+    }
+  }
+
+  private final AtomicReferenceArray<Scratch> slots;
+  private final int mask;
+
+  /**
+   * @param stripes the minimum number of slots; rounded up to a power of two
+   */
+  ScratchPool(int stripes) {
+    if (stripes < 1) throw new IllegalArgumentException("Stripe count must be above 0");
+
+    int capacity = Integer.highestOneBit(stripes - 1) << 1;
+    if (capacity == 0) capacity = 1;
+
+    this.slots = new AtomicReferenceArray<>(capacity);
+    this.mask = capacity - 1;
+  }
+
+  Scratch acquire() {
+    int start = stripe();
+
+    for (int i = 0; i < PROBES; i++) {
+      var scratch = slots.getAndSet((start + i) & mask, null);
+
+      if (scratch != null) {
+        Metrics.hit(Metrics.Cache.SCRATCH_POOL);
+        return scratch;
+      }
+    }
+
+    Metrics.miss(Metrics.Cache.SCRATCH_POOL);
+    return new Scratch();
+  }
+
+  void release(Scratch scratch) {
+    int start = stripe();
+
+    for (int i = 0; i < PROBES; i++) {
+      if (slots.compareAndSet((start + i) & mask, null, scratch)) return;
+    }
+  }
+
+  private int stripe() {
+    long id = Thread.currentThread().threadId();
+
+    return (int) (id ^ (id >>> 32)) * 0x9E3779B9 >>> 16;
+  }
+}
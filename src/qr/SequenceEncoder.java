@@ -0,0 +1,269 @@
+package qr;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Encodes runs of payloads that share a prefix, such as a URL followed by a serial number.
+ * <p>
+ * The codewords for a suffix are the same as those of {@link Encoder#encode} for
+ * {@code prefix + suffix}, but the mode indicator, character count and prefix bits are laid
+ * down once and copied for every item, which then only appends its suffix and the padding.
+ * As the character count precedes the data, the shared bits are kept for one mode and item
+ * length at a time: runs of equal length, like zero-padded serial numbers, benefit most.
+ * <p>
+ * Instances are thread-safe.
+ *
+ * <pre>
+ * var labels = SequenceEncoder.of("https://x.co/p/", 3, ErrorCorrection.MEDIUM);
+ * labels.serials(1, 999_999, 6, MaskPattern.MASK2).forEach(symbol -> ...);
+ * </pre>
+ */
+public final class SequenceEncoder {
+
+  // In order of preference; an item takes the last mode its prefix or suffix needs
+  private enum Mode {NUMERIC, ALPHANUMERIC, BYTE}
+
+  /**
+   * The segment bits shared by all items of one mode and length: the header and the prefix
+   * up to its last complete character group. Prefix characters grouped with the start of
+   * the suffix are left pending.
+   */
+  private record Snapshot(Mode mode, int length, byte[] bits, int bitLength, String pending) {
+  }
+
+  private final String prefix;
+  private final byte[] prefixBytes;
+  private final Mode prefixMode;
+  private final boolean bytesConcatenate;
+  private final int version;
+  private final ErrorCorrection errorCorrection;
+  private final Charset encoding;
+
+  // Immutable, so a race merely computes it twice
+  private Snapshot snapshot;
+
+  private SequenceEncoder(String prefix, int version, ErrorCorrection errorCorrection, Charset encoding) {
+    this.prefix = prefix;
+    this.prefixBytes = prefix.getBytes(encoding);
+    this.prefixMode = modeOf(prefix);
+    this.version = version;
+    this.errorCorrection = errorCorrection;
+    this.encoding = encoding;
+
+    // Stateful encodings (e.g. UTF-16 with its byte order mark) don't encode piecewise
+    var probe = "0".getBytes(encoding);
+    var joined = Arrays.copyOf(prefixBytes, prefixBytes.length + probe.length);
+    System.arraycopy(probe, 0, joined, prefixBytes.length, probe.length);
+
+    this.bytesConcatenate = Arrays.equals(joined, (prefix + "0").getBytes(encoding))
+        && (prefix.isEmpty() || !Character.isHighSurrogate(prefix.charAt(prefix.length() - 1)));
+  }
+
+  /**
+   * @see #of(String, int, ErrorCorrection, Charset)
+   */
+  public static SequenceEncoder of(String prefix, int version, ErrorCorrection errorCorrection) {
+    return of(prefix, version, errorCorrection, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @param prefix          the text every item starts with; may be empty
+   * @param version         the version of every item; items that don't fit are rejected
+   * @param errorCorrection the error correction level of every item
+   * @param encoding        the character encoding for items in byte mode
+   */
+  public static SequenceEncoder of(String prefix, int version, ErrorCorrection errorCorrection, Charset encoding) {
+    if (version < 1 || version > Encoder.VERSION_EC_CAPACITY_MAPPING.length) {
+      throw new IllegalArgumentException("Unsupported version: " + version);
+    }
+
+    return new SequenceEncoder(prefix, version, errorCorrection, encoding);
+  }
+
+  /**
+   * Encodes the prefix followed by the given suffix.
+   *
+   * @return the same bytes as {@link Encoder#encode(String, int, ErrorCorrection, Charset)}
+   * @throws IllegalArgumentException if the item does not fit the version
+   */
+  public byte[] encode(String suffix) {
+    var buffer = new byte[Encoder.getEncodedLength(version, errorCorrection)];
+    encode(suffix, buffer);
+
+    return buffer;
+  }
+
+  public EncodedSymbol symbol(String suffix, MaskPattern maskPattern) {
+    return EncodedSymbol.fromCodewords(encode(suffix), version, errorCorrection, maskPattern);
+  }
+
+  /**
+   * Returns the symbols for the serial numbers from {@code first} to {@code last}, inclusive,
+   * each zero-padded to {@code width} digits. The stream is lazy and sequential.
+   */
+  public Stream<EncodedSymbol> serials(long first, long last, int width, MaskPattern maskPattern) {
+    if (first < 0 || last < first) throw new IllegalArgumentException("Invalid serial range: " + first + " to " + last);
+    if (width < 1 || width > 18) throw new IllegalArgumentException("Serial width must be between 1 and 18 digits");
+    if (Long.toString(last).length() > width) {
+      throw new IllegalArgumentException("Serial " + last + " exceeds " + width + " digits");
+    }
+
+    return LongStream.rangeClosed(first, last).mapToObj(serial -> symbol(serial(serial, width), maskPattern));
+  }
+
+  private static String serial(long value, int width) {
+    var digits = new char[width];
+
+    for (int i = width - 1; i >= 0; i--, value /= 10) {
+      digits[i] = (char) ('0' + value % 10);
+    }
+
+    return new String(digits);
+  }
+
+  /**
+   * Encodes like {@link #encode(String)}, but into the start of a caller-supplied buffer.
+   *
+   * @param buffer the buffer to write to; must hold at least {@link Encoder#getEncodedLength} bytes
+   * @return the number of bytes written
+   */
+  int encode(String suffix, byte[] buffer) {
+    var mode = suffix.isEmpty() ? prefixMode : modeOf(suffix);
+    if (mode.compareTo(prefixMode) < 0) mode = prefixMode;
+
+    // An empty item is encoded in byte mode, so the shared bits can't be known up front
+    if ((prefix.isEmpty() && suffix.isEmpty()) || (mode == Mode.BYTE && !bytesConcatenate)) {
+      return Encoder.encode(prefix + suffix, version, errorCorrection, encoding, buffer);
+    }
+
+    long start = Metrics.start();
+
+    byte[] suffixBytes = mode == Mode.BYTE ? suffix.getBytes(encoding) : null;
+    int length = mode == Mode.BYTE ? prefixBytes.length + suffixBytes.length : prefix.length() + suffix.length();
+
+    int totalBits = mode == Mode.NUMERIC
+        ? Encoder.getNumericSegmentBits(length, version)
+        : mode == Mode.ALPHANUMERIC
+        ? Encoder.getAlphaNumericSegmentBits(length, version)
+        : Encoder.getByteSegmentBits(length, version);
+
+    int dataCodewords = Encoder.getDataCodewords(version, errorCorrection);
+    int encodedLength = Encoder.getEncodedLength(version, errorCorrection);
+
+    if (totalBits < 0 || (totalBits + 7) / 8 > dataCodewords) {
+      throw new IllegalArgumentException("Encoded data exceeds the capacity of version " + version);
+    }
+
+    var snapshot = this.snapshot;
+    if (snapshot == null || snapshot.mode() != mode || snapshot.length() != length) {
+      this.snapshot = snapshot = snapshot(mode, length, prefix + suffix);
+    }
+
+    Arrays.fill(buffer, 0, encodedLength, (byte) 0);
+    System.arraycopy(snapshot.bits(), 0, buffer, 0, snapshot.bits().length);
+
+    int offset = snapshot.bitLength();
+    String pending = snapshot.pending();
+
+    if (mode == Mode.NUMERIC) {
+      int count = pending.length() + suffix.length();
+
+      for (int i = 0; i < count; i += 3) {
+        int digits = Math.min(3, count - i), value = 0;
+
+        for (int j = 0; j < digits; j++) value = value * 10 + charAt(pending, suffix, i + j) - '0';
+        offset = writeBits(buffer, offset, value, digits == 3 ? 10 : digits == 2 ? 7 : 4);
+      }
+    } else if (mode == Mode.ALPHANUMERIC) {
+      int count = pending.length() + suffix.length();
+
+      for (int i = 0; i < count; i += 2) {
+        int value = Encoder.getAlphanumericValue(charAt(pending, suffix, i));
+
+        if (i + 1 < count) {
+          offset = writeBits(buffer, offset, value * 45 + Encoder.getAlphanumericValue(charAt(pending, suffix, i + 1)), 11);
+        } else {
+          offset = writeBits(buffer, offset, value, 6);
+        }
+      }
+    } else {
+      for (byte b : suffixBytes) offset = writeBits(buffer, offset, b & 0xFF, 8);
+    }
+
+    Encoder.pad(buffer, (offset + 7) / 8, dataCodewords);
+    Metrics.record(Metrics.Stage.ENCODE, start);
+
+    return encodedLength;
+  }
+
+  /**
+   * Takes the shared bits from a full encoding of one item; everything before the first
+   * suffix character only depends on the mode and length.
+   */
+  private Snapshot snapshot(Mode mode, int length, String item) {
+    byte[] segment;
+    int bitLength, grouped;
+
+    if (mode == Mode.NUMERIC) {
+      segment = Encoder.encodeNumeric(item.chars().map(digit -> digit - '0').toArray(), version);
+      grouped = prefix.length() / 3 * 3;
+      bitLength = Encoder.getNumericSegmentBits(grouped, version);
+    } else if (mode == Mode.ALPHANUMERIC) {
+      segment = Encoder.encodeAlphaNumeric(item, version);
+      grouped = prefix.length() / 2 * 2;
+      bitLength = Encoder.getAlphaNumericSegmentBits(grouped, version);
+    } else {
+      segment = Encoder.encodeBytes(item.getBytes(encoding), version);
+      grouped = prefix.length();
+      bitLength = Encoder.getByteSegmentBits(prefixBytes.length, version);
+    }
+
+    var bits = Arrays.copyOf(segment, (bitLength + 7) / 8);
+    if (bitLength % 8 != 0) bits[bits.length - 1] &= (byte) (0xFF << (8 - bitLength % 8));
+
+    return new Snapshot(mode, length, bits, bitLength, prefix.substring(grouped));
+  }
+
+  private static Mode modeOf(String text) {
+    var mode = Mode.NUMERIC;
+
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+
+      if (c >= '0' && c <= '9') continue;
+      if (Encoder.getAlphanumericValue(c) < 0) return Mode.BYTE;
+
+      mode = Mode.ALPHANUMERIC;
+    }
+
+    return mode;
+  }
+
+  private static char charAt(String pending, String suffix, int index) {
+    return index < pending.length() ? pending.charAt(index) : suffix.charAt(index - pending.length());
+  }
+
+  private static int writeBits(byte[] buffer, int offset, int value, int count) {
+    for (int i = count - 1; i >= 0; i--, offset++) {
+      if ((value & (1 << i)) != 0) buffer[offset >>> 3] |= (byte) (0x80 >>> (offset & 7));
+    }
+
+    return offset;
+  }
+
+  public String getPrefix() {
+    return this.prefix;
+  }
+
+  public int getVersion() {
+    return this.version;
+  }
+
+  public ErrorCorrection getErrorCorrection() {
+    return this.errorCorrection;
+  }
+}
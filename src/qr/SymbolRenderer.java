@@ -0,0 +1,173 @@
+package qr;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Paints {@link EncodedSymbol}s into images. All pixel work of the library happens here,
+ * and only when an image is actually requested.
+ */
+public final class SymbolRenderer {
+
+  private static final int QUIET_ZONE_SIZE = SymbolWriter.QUIET_ZONE_SIZE;
+  private static final int FINDER_PATTERN_SIZE = SymbolWriter.FINDER_PATTERN_SIZE;
+
+  private final EncodedSymbol symbol;
+  private final RenderStyle style;
+  private final int size;
+  private final int moduleSize;
+  private final int radius;
+  private final BufferedImage image;
+  private final int[] pixels;
+  private final int stride;
+  private final int embeddedAreaSize;
+  private final int embeddedAreaOrigin;
+
+  private SymbolRenderer(EncodedSymbol symbol, RenderStyle style) {
+    this.symbol = style.getEmbeddedImage() == null ? symbol : symbol.withEmbeddedArea();
+    this.style = style;
+    this.size = symbol.getSize();
+    this.moduleSize = style.getModuleSize();
+    this.radius = style.getModuleBorderRadius();
+
+    int imageSize = getImageSize(symbol, style);
+    this.image = new BufferedImage(imageSize, imageSize, BufferedImage.TYPE_INT_ARGB);
+    this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    this.stride = imageSize;
+
+    this.embeddedAreaSize = style.getEmbeddedImage() == null ? 0 : EmbeddedImages.getAreaSize(symbol.getVersion(), symbol.getErrorCorrection());
+    this.embeddedAreaOrigin = (this.size - this.embeddedAreaSize) / 2;
+  }
+
+  /**
+   * Renders the given symbol into a new image, including the quiet zone.
+   * <p>
+   * Unless the style embeds an image or uses translucent module colors, the result is a
+   * {@link BufferedImage#TYPE_BYTE_BINARY} image with a two- or three-entry palette, using
+   * one or two bits per pixel. Otherwise it is a {@link BufferedImage#TYPE_INT_ARGB} image.
+   * <p>
+   * An embedded image replaces the data modules of {@link EncodedSymbol#withEmbeddedArea()};
+   * function patterns within its area are drawn over it.
+   *
+   * @param symbol the symbol to render
+   * @param style  the style to render it with
+   * @return a freshly allocated image containing the symbol
+   * @throws IllegalArgumentException if the style embeds an image, but the symbol's version
+   *                                  and error correction level leave no room for one
+   */
+  public static BufferedImage render(EncodedSymbol symbol, RenderStyle style) {
+    return render(symbol, style, null);
+  }
+
+  /**
+   * Renders like {@link #render(EncodedSymbol, RenderStyle)}, composing pixel rows in the
+   * given scratch buffer when it is wide enough.
+   */
+  static BufferedImage render(EncodedSymbol symbol, RenderStyle style, byte[] lineBuffer) {
+    long start = Metrics.start();
+    BufferedImage image;
+
+    if (isIndexable(style)) {
+      image = IndexedRenderer.render(symbol, style, lineBuffer);
+    } else {
+      var renderer = new SymbolRenderer(symbol, style);
+      renderer.paint();
+      image = renderer.image;
+    }
+
+    Metrics.record(Metrics.Stage.RENDER, start);
+    return image;
+  }
+
+  /**
+   * Whether every pixel takes exactly one of the style's colors, i.e. nothing is blended.
+   */
+  private static boolean isIndexable(RenderStyle style) {
+    return style.getEmbeddedImage() == null
+        && style.getActiveColor().getAlpha() == 255
+        && style.getInactiveColor().getAlpha() == 255;
+  }
+
+  /**
+   * @return the width and height, in pixels, of the image {@link #render} produces
+   */
+  public static int getImageSize(EncodedSymbol symbol, RenderStyle style) {
+    return (symbol.getSize() + 2 * QUIET_ZONE_SIZE) * style.getModuleSize();
+  }
+
+  private void paint() {
+    // Fills quiet zone and the rest of the background
+    Arrays.fill(this.pixels, style.getBackgroundColor().getRGB());
+
+    var finder = ModuleSprites.finder(moduleSize, radius, style.getActiveColor(), style.getInactiveColor(), style.getBackgroundColor());
+    drawSprite(finder, FINDER_PATTERN_SIZE, 0, 0);
+    drawSprite(finder, FINDER_PATTERN_SIZE, 0, size - FINDER_PATTERN_SIZE);
+    drawSprite(finder, FINDER_PATTERN_SIZE, size - FINDER_PATTERN_SIZE, 0);
+
+    var active = ModuleSprites.module(moduleSize, radius, style.getActiveColor(), style.getBackgroundColor());
+    var inactive = ModuleSprites.module(moduleSize, radius, style.getInactiveColor(), style.getBackgroundColor());
+
+    for (int y = 0; y < size; y++) {
+      for (int x = 0; x < size; x++) {
+        if (isFinderPattern(x, y) || isEmbeddedArea(x, y)) continue;
+
+        drawSprite(symbol.isDark(x, y) ? active : inactive, 1, x, y);
+      }
+    }
+
+    if (this.embeddedAreaSize == 0) return;
+
+    drawEmbeddedImage();
+
+    // Alignment patterns in the area have no error correction to fall back on
+    var layout = VersionLayout.of(symbol.getVersion());
+
+    for (int y = embeddedAreaOrigin; y < embeddedAreaOrigin + embeddedAreaSize; y++) {
+      for (int x = embeddedAreaOrigin; x < embeddedAreaOrigin + embeddedAreaSize; x++) {
+        if (layout.isFunctionModule(x, y)) drawSprite(symbol.isDark(x, y) ? active : inactive, 1, x, y);
+      }
+    }
+  }
+
+  private void drawSprite(int[] sprite, int cells, int x, int y) {
+    ModuleSprites.stamp(
+        sprite,
+        cells * moduleSize,
+        this.pixels,
+        this.stride,
+        (x + QUIET_ZONE_SIZE) * moduleSize,
+        (y + QUIET_ZONE_SIZE) * moduleSize
+    );
+  }
+
+  /**
+   * Draws the embedded image, centered in the area of cleared data modules.
+   */
+  private void drawEmbeddedImage() {
+    int areaPixels = this.embeddedAreaSize * this.moduleSize;
+    var scaled = EmbeddedImages.scaled(style.getEmbeddedImage(), areaPixels);
+
+    int areaOffset = (this.embeddedAreaOrigin + QUIET_ZONE_SIZE) * this.moduleSize;
+    int scaledX = areaOffset + (areaPixels - scaled.getWidth()) / 2;
+    int scaledY = areaOffset + (areaPixels - scaled.getHeight()) / 2;
+
+    var gfx = image.createGraphics();
+
+    try {
+      gfx.drawImage(scaled, scaledX, scaledY, null);
+    } finally {
+      gfx.dispose();
+    }
+  }
+
+  private boolean isEmbeddedArea(int x, int y) {
+    return x >= embeddedAreaOrigin && y >= embeddedAreaOrigin
+        && x < embeddedAreaOrigin + embeddedAreaSize && y < embeddedAreaOrigin + embeddedAreaSize;
+  }
+
+  private boolean isFinderPattern(int x, int y) {
+    return (x < FINDER_PATTERN_SIZE || x >= size - FINDER_PATTERN_SIZE) && y < FINDER_PATTERN_SIZE
+        || x < FINDER_PATTERN_SIZE && y >= size - FINDER_PATTERN_SIZE;
+  }
+}
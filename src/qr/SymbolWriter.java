@@ -0,0 +1,215 @@
+package qr;
+
+/**
+ * Lays out the function patterns and data bits of a symbol into a {@link BitMatrix}.
+ * No pixels are produced here; see {@link SymbolRenderer} for that.
+ */
+final class SymbolWriter {
+
+  static final int QUIET_ZONE_SIZE = 3;
+  static final int FINDER_PATTERN_SIZE = 7;
+  static final int FINDER_PATTERN_INNER_SIZE = 3;
+  static final int ALIGNMENT_PATTERN_SIZE = 5;
+
+  private static final int EC_FORMAT_POLYNOMIAL_MASK = 0b10100110111;
+  private static final int EC_VERSION_POLYNOMIAL_MASK = 0b1111100100101;
+
+  private final int size;
+  private final int version;
+  private final ErrorCorrection errorCorrection;
+  private final MaskPattern maskPattern;
+  private final BitMatrix matrix;
+
+  SymbolWriter(int version, ErrorCorrection errorCorrection, MaskPattern maskPattern) {
+    this.version = version;
+    this.errorCorrection = errorCorrection;
+    this.maskPattern = maskPattern;
+    this.size = 17 + version * 4;
+    this.matrix = new BitMatrix(this.size);
+  }
+
+  BitMatrix write(byte[] encodedData) {
+    return write(encodedData, encodedData.length);
+  }
+
+  /**
+   * Lays out the symbol, reading data from the first {@code length} bytes of the given array.
+   */
+  BitMatrix write(byte[] encodedData, int length) {
+    long start = Metrics.start();
+
+    drawFinderPattern(0, 0);
+    drawFinderPattern(0, size - FINDER_PATTERN_SIZE);
+    drawFinderPattern(size - FINDER_PATTERN_SIZE, 0);
+
+    // Timing pattern
+    for (int i = 0; i < size - FINDER_PATTERN_SIZE * 2 - 2; i += 2) {
+      setModule(FINDER_PATTERN_SIZE - 1, FINDER_PATTERN_SIZE + i + 1, true); // left alignment pattern
+      setModule(FINDER_PATTERN_SIZE + i + 1, FINDER_PATTERN_SIZE - 1, true); // top alignment pattern
+    }
+
+    drawFormatInfo();
+    setModule(FINDER_PATTERN_SIZE + 1, size - FINDER_PATTERN_SIZE - 1, true); // Dark module
+    drawVersionInfo();
+    drawAlignmentPatterns();
+    drawData(encodedData, length);
+    start = Metrics.record(Metrics.Stage.PLACEMENT, start);
+
+    applyMask();
+    Metrics.record(Metrics.Stage.MASKING, start);
+
+    return this.matrix;
+  }
+
+  private void setModule(int x, int y, boolean active) {
+    if (matrix.contains(x, y)) matrix.set(x, y, active);
+  }
+
+  /**
+   * Draws the finder pattern at the given coordinates
+   */
+  private void drawFinderPattern(int x, int y) {
+    int centerOffset = (FINDER_PATTERN_SIZE - FINDER_PATTERN_INNER_SIZE) / 2;
+
+    matrix.fill(x, y, FINDER_PATTERN_SIZE, true);
+    matrix.fill(x + centerOffset / 2, y + centerOffset / 2, (FINDER_PATTERN_SIZE + FINDER_PATTERN_INNER_SIZE) / 2, false);
+    matrix.fill(x + centerOffset, y + centerOffset, FINDER_PATTERN_INNER_SIZE, true);
+  }
+
+  private void drawVersionInfo() {
+    // Below version 7, version info is not rendered.
+    if (this.version < 7) return;
+
+    int versionInfoBits = Encoder.ECVersionInfo(version, EC_VERSION_POLYNOMIAL_MASK);
+    int i, xOffset, yOffset, bitState;
+
+    for (i = 0; i < 18; i++) {
+      xOffset = i / 3;
+      yOffset = 3 - (i % 3);
+      bitState = versionInfoBits & (1 << i);
+
+      setModule(xOffset, size - FINDER_PATTERN_SIZE - yOffset - 1, bitState != 0);
+      setModule(size - FINDER_PATTERN_SIZE - yOffset - 1, xOffset, bitState != 0);
+    }
+  }
+
+  private void drawFormatInfo() {
+    int formatStringBits = Encoder.ECFormatInfo(errorCorrection, maskPattern, EC_FORMAT_POLYNOMIAL_MASK);
+
+    int i, offset;
+    boolean active;
+
+    // 0-6 bits
+    for (i = 0; i < 8; i++) {
+      active = (formatStringBits & (1 << (15 - i))) != 0;
+
+      // Skip alignment pattern
+      setModule(i == FINDER_PATTERN_SIZE ? i + 1 : i - 1, FINDER_PATTERN_SIZE + 1, active);
+      setModule(FINDER_PATTERN_SIZE + 1, this.size - i, active);
+    }
+
+    for (i = 0, offset = 8; i < 9; i++) {
+      active = (formatStringBits & (1 << (15 - i - offset))) != 0;
+
+      // Skip alignment pattern at y = FINDER_PATTERN_SIZE
+      setModule(FINDER_PATTERN_SIZE + 1, FINDER_PATTERN_SIZE - i - (i == 1 ? 1 : 0), active);
+      setModule(size - FINDER_PATTERN_SIZE + i - 1, FINDER_PATTERN_SIZE + 1, active);
+    }
+  }
+
+  /**
+   * Places the data bits along the version's precomputed zig-zag order. Modules left over
+   * once the data runs out are remainder bits, which are zero before masking.
+   */
+  private void drawData(byte[] encodedData, int length) {
+    short[] placement = VersionLayout.of(version).getPlacement();
+    int bits = Math.min(placement.length, length * 8);
+    int i, module;
+
+    for (i = 0; i < placement.length; i++) {
+      module = placement[i];
+
+      boolean bit = i < bits && (encodedData[i >>> 3] & (0x80 >>> (i & 7))) != 0;
+      matrix.set(module % size, module / size, bit);
+    }
+  }
+
+  /**
+   * Inverts the data modules selected by the mask pattern, one word of the precomputed
+   * mask plane at a time.
+   */
+  private void applyMask() {
+    matrix.xor(VersionLayout.of(version).getMaskPlane(maskPattern));
+  }
+
+  private void drawAlignmentPattern(int x, int y) {
+    matrix.fill(x - 2, y - 2, ALIGNMENT_PATTERN_SIZE, true);
+    matrix.fill(x - 1, y - 1, 3, false);
+    setModule(x, y, true);
+  }
+
+  private void drawAlignmentPatterns() {
+    if (version == 1) return;
+
+    var coordinates = ALIGNMENT_VERSION_COORDINATE_MAPPING[this.version - 2];
+
+    for (int y : coordinates) {
+      for (int x : coordinates) {
+        // Skip if pattern would overlap with finder patterns
+        if (!isFinderPattern(x, y)) {
+          drawAlignmentPattern(x, y);
+        }
+      }
+    }
+  }
+
+  private boolean isFinderPattern(int x, int y) {
+    boolean topLeft = x >= 0 && y >= 0 && x < FINDER_PATTERN_SIZE && y < FINDER_PATTERN_SIZE;
+    boolean topRight = x >= size - FINDER_PATTERN_SIZE - 1 && y >= 0 && x < size && y < FINDER_PATTERN_SIZE + 1;
+    boolean bottomLeft = x >= 0 && y >= size - FINDER_PATTERN_SIZE - 1 && x < FINDER_PATTERN_SIZE + 1 && y < size;
+
+    return topLeft || topRight || bottomLeft;
+  }
+
+  // From version 2
+  static final int[][] ALIGNMENT_VERSION_COORDINATE_MAPPING = {
+      {6, 18},
+      {6, 22},
+      {6, 26},
+      {6, 30},
+      {6, 34},
+      {6, 22, 38},
+      {6, 24, 42},
+      {6, 26, 46},
+      {6, 28, 50},
+      {6, 30, 54},
+      {6, 32, 58},
+      {6, 34, 62},
+      {6, 26, 46, 66},
+      {6, 26, 48, 70},
+      {6, 26, 50, 74},
+      {6, 30, 54, 78},
+      {6, 30, 56, 82},
+      {6, 30, 58, 86},
+      {6, 34, 62, 90},
+      {6, 28, 50, 72, 94},
+      {6, 26, 50, 74, 98},
+      {6, 30, 54, 78, 102},
+      {6, 28, 54, 80, 106},
+      {6, 32, 58, 84, 110},
+      {6, 30, 58, 86, 114},
+      {6, 34, 62, 90, 118},
+      {6, 26, 50, 74, 98, 122},
+      {6, 30, 54, 78, 102, 126},
+      {6, 26, 52, 78, 104, 130},
+      {6, 30, 56, 82, 108, 134},
+      {6, 34, 60, 86, 112, 138},
+      {6, 30, 58, 86, 114, 142},
+      {6, 34, 62, 90, 118, 146},
+      {6, 30, 54, 78, 102, 126, 150},
+      {6, 24, 50, 76, 102, 128, 154},
+      {6, 28, 54, 80, 106, 132, 158},
+      {6, 32, 58, 84, 110, 136, 162},
+      {6, 26, 54, 82, 110, 138, 166},
+      {6, 30, 58, 86, 114, 142, 170}};
+}
@@ -0,0 +1,164 @@
+package qr;
+
+/**
+ * Per-version module layout, computed once and shared: which modules belong to function
+ * patterns, and the order in which data bits are placed in the remaining ones.
+ */
+final class VersionLayout {
+
+  private static final int FINDER_PATTERN_SIZE = SymbolWriter.FINDER_PATTERN_SIZE;
+  private static final int TIMING_PATTERN_POSITION = FINDER_PATTERN_SIZE - 1;
+
+  private static final VersionLayout[] LAYOUTS = new VersionLayout[40];
+
+  private final int version;
+  private final int size;
+  private final BitMatrix functionModules;
+  private final short[] placement;
+  private final long[][] maskPlanes;
+
+  private VersionLayout(int version) {
+    this.version = version;
+    this.size = 17 + version * 4;
+    this.functionModules = new BitMatrix(size);
+
+    markFunctionModules();
+    this.placement = computePlacement();
+
+    // All in final fields, so sharing a layout shares the finished planes
+    var patterns = MaskPattern.values();
+    this.maskPlanes = new long[patterns.length][];
+    for (var pattern : patterns) maskPlanes[pattern.ordinal()] = computeMaskPlane(pattern);
+  }
+
+  /**
+   * @return the layout of the given version, computing it on first use
+   */
+  static VersionLayout of(int version) {
+    if (version < 1 || version > LAYOUTS.length) throw new IllegalArgumentException("Unsupported version: " + version);
+
+    // Layouts are immutable, so a race merely computes one twice
+    var layout = LAYOUTS[version - 1];
+    if (layout == null) LAYOUTS[version - 1] = layout = new VersionLayout(version);
+
+    return layout;
+  }
+
+  int getSize() {
+    return this.size;
+  }
+
+  /**
+   * @return whether the module belongs to a function pattern, format or version information
+   */
+  boolean isFunctionModule(int x, int y) {
+    return functionModules.get(x, y);
+  }
+
+  /**
+   * Returns the module index ({@code y * size + x}) of every data bit, in placement order.
+   * The returned array is shared and must not be modified.
+   */
+  short[] getPlacement() {
+    return this.placement;
+  }
+
+  /**
+   * Returns the modules the mask pattern inverts, packed like {@link BitMatrix#getWords()}.
+   * Function modules are never set, so the plane can be XORed over a whole symbol. The
+   * returned array is shared and must not be modified.
+   */
+  long[] getMaskPlane(MaskPattern maskPattern) {
+    return this.maskPlanes[maskPattern.ordinal()];
+  }
+
+  private long[] computeMaskPlane(MaskPattern maskPattern) {
+    var generator = maskPattern.getGenerator();
+    var plane = new BitMatrix(size);
+
+    int x, y;
+
+    for (short module : placement) {
+      x = module % size;
+      y = module / size;
+
+      if (generator.mask(x, y)) plane.set(x, y, true);
+    }
+
+    return plane.getWords();
+  }
+
+  private void markFunctionModules() {
+    // Finder patterns with their separators
+    int corner = FINDER_PATTERN_SIZE + 1;
+    mark(0, 0, corner, corner);
+    mark(size - corner, 0, corner, corner);
+    mark(0, size - corner, corner, corner);
+
+    // Timing patterns
+    mark(TIMING_PATTERN_POSITION, 0, 1, size);
+    mark(0, TIMING_PATTERN_POSITION, size, 1);
+
+    // Alignment patterns, except where they would overlap a finder pattern
+    if (version > 1) {
+      int[] positions = SymbolWriter.ALIGNMENT_VERSION_COORDINATE_MAPPING[version - 2];
+      int last = positions.length - 1;
+
+      for (int i = 0; i < positions.length; i++) {
+        for (int j = 0; j < positions.length; j++) {
+          if ((i == 0 && j == 0) || (i == 0 && j == last) || (i == last && j == 0)) continue;
+
+          mark(positions[i] - 2, positions[j] - 2, SymbolWriter.ALIGNMENT_PATTERN_SIZE, SymbolWriter.ALIGNMENT_PATTERN_SIZE);
+        }
+      }
+    }
+
+    // Format information, including the dark module
+    mark(corner, 0, 1, corner + 1);
+    mark(0, corner, corner + 1, 1);
+    mark(size - corner, corner, corner, 1);
+    mark(corner, size - corner, 1, corner);
+
+    // Version information
+    if (version >= 7) {
+      mark(size - corner - 3, 0, 3, 6);
+      mark(0, size - corner - 3, 6, 3);
+    }
+  }
+
+  private void mark(int x, int y, int width, int height) {
+    for (int dy = 0; dy < height; dy++) {
+      for (int dx = 0; dx < width; dx++) {
+        functionModules.set(x + dx, y + dy, true);
+      }
+    }
+  }
+
+  /**
+   * Walks the two-module-wide columns from right to left, alternating upwards and
+   * downwards, skipping the vertical timing pattern and every function module.
+   */
+  private short[] computePlacement() {
+    var placement = new short[size * size];
+    int count = 0;
+
+    for (int right = size - 1, column = 0; right >= 1; right -= 2, column++) {
+      if (right == TIMING_PATTERN_POSITION) right--;
+
+      boolean upwards = column % 2 == 0;
+
+      for (int step = 0; step < size; step++) {
+        int y = upwards ? size - 1 - step : step;
+
+        for (int x = right; x > right - 2; x--) {
+          if (!functionModules.get(x, y)) placement[count++] = (short) (y * size + x);
+        }
+      }
+    }
+
+    var trimmed = new short[count];
+    System.arraycopy(placement, 0, trimmed, 0, count);
+
+    return trimmed;
+  }
+}
@@ -0,0 +1,212 @@
+package qr;
+
+import com.sun.management.ThreadMXBean;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Regression checks for the generation hot path: encode, placement and masking, and render.
+ * <p>
+ * For every stage and representative payload, the suite asserts that
+ * <ul>
+ *   <li>nothing is written to stdout or stderr while generating,</li>
+ *   <li>the bytes allocated per operation stay within the stored budget, and</li>
+ *   <li>the p99 latency stays below the stored baseline times a tolerance factor.</li>
+ * </ul>
+ * Baselines live in {@code hot-path-baseline.properties} next to this file. Run with
+ * {@code -Dqr.baseline.update=true} to rewrite them from the current measurements after an
+ * intentional change. {@code -Dqr.latency.tolerance} (default 3.0) scales the latency
+ * ceiling, since timings vary far more between machines than allocations do; a fixed
+ * slack of 50 µs is added on top.
+ * <p>
+ * Exits with status 1 when any check fails.
+ */
+public final class HotPathRegressionSuite {
+
+  private static final Path BASELINE = Path.of(System.getProperty("qr.baseline", "test/qr/hot-path-baseline.properties"));
+
+  private static final int WARMUP_ITERATIONS = 3_000;
+  private static final int ALLOCATION_ITERATIONS = 1_000;
+  private static final int LATENCY_SAMPLES = 2_000;
+  private static final int LATENCY_ROUNDS = 3;
+
+  // Operations take microseconds, where scheduler noise alone can triple a p99.
+  private static final long LATENCY_SLACK_NANOS = 50_000;
+
+  // Allocation counters are exact, but warm-up state (e.g. lazily built caches) may shift
+  // a few bytes between runs.
+  private static final double ALLOCATION_TOLERANCE = 1.05;
+
+  private static final Map<String, String> PAYLOADS = Map.of(
+      "url", "https://example.com/products/12345?ref=label",
+      "alphanumeric", "ORDER-2024/00017 LOT:AB12",
+      "numeric", "012345678901234567890123456789",
+      "text", "The quick brown fox jumps over the lazy dog, then naps under the old oak tree."
+  );
+
+  private static final RenderStyle STYLE = RenderStyle.defaults().withModuleSize(4);
+
+  private final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+  private final Properties baseline = new Properties();
+  private final Map<String, String> measured = new TreeMap<>();
+  private final List<String> failures = new ArrayList<>();
+  private final boolean update = Boolean.getBoolean("qr.baseline.update");
+  private final double latencyTolerance = Double.parseDouble(System.getProperty("qr.latency.tolerance", "3.0"));
+
+  public static void main(String[] args) throws IOException {
+    var suite = new HotPathRegressionSuite();
+    suite.run();
+
+    System.exit(suite.failures.isEmpty() ? 0 : 1);
+  }
+
+  private void run() throws IOException {
+    if (Files.exists(BASELINE)) {
+      try (Reader reader = Files.newBufferedReader(BASELINE)) {
+        baseline.load(reader);
+      }
+    } else if (!update) {
+      throw new IllegalStateException("Missing baseline " + BASELINE + "; run with -Dqr.baseline.update=true to create it");
+    }
+
+    for (var payload : new TreeMap<>(PAYLOADS).entrySet()) {
+      var data = payload.getValue();
+      var errorCorrection = ErrorCorrection.MEDIUM;
+      int version = Version.fromData(data, errorCorrection);
+      byte[] codewords = Encoder.encode(data, version, errorCorrection);
+      var symbol = EncodedSymbol.fromCodewords(codewords, version, errorCorrection, MaskPattern.MASK2);
+
+      check("encode." + payload.getKey(), () -> Encoder.encode(data, version, errorCorrection));
+      check("place." + payload.getKey(), () -> EncodedSymbol.fromCodewords(codewords, version, errorCorrection, MaskPattern.MASK2));
+      check("render." + payload.getKey(), () -> SymbolRenderer.render(symbol, STYLE));
+    }
+
+    var sequence = SequenceEncoder.of("https://x.co/p/", 3, ErrorCorrection.MEDIUM);
+    check("encode.sequence", () -> sequence.encode("004217"));
+
+    if (update) {
+      var properties = new Properties();
+      properties.putAll(measured);
+
+      try (Writer writer = Files.newBufferedWriter(BASELINE)) {
+        properties.store(writer, "Hot path baseline; regenerate with -Dqr.baseline.update=true");
+      }
+      System.out.println("Baseline written to " + BASELINE);
+      return;
+    }
+
+    if (failures.isEmpty()) {
+      System.out.println("All hot path checks passed");
+    } else {
+      failures.forEach(failure -> System.out.println("FAIL " + failure));
+    }
+  }
+
+  private void check(String name, Supplier<Object> operation) {
+    checkSilent(name, operation);
+
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) consume(operation.get());
+
+    long allocated = measureAllocatedBytes(operation);
+    long p99 = measureP99Nanos(operation);
+
+    measured.put(name + ".allocatedBytes", Long.toString(allocated));
+    measured.put(name + ".p99Nanos", Long.toString(p99));
+    System.out.printf("%-22s %10d B/op %10d ns p99%n", name, allocated, p99);
+
+    if (update) return;
+
+    long allocationBudget = budget(name + ".allocatedBytes");
+    if (allocated > allocationBudget * ALLOCATION_TOLERANCE) {
+      failures.add(name + ": allocated " + allocated + " B/op, budget is " + allocationBudget + " B/op");
+    }
+
+    long latencyBaseline = budget(name + ".p99Nanos");
+    if (p99 > latencyBaseline * latencyTolerance + LATENCY_SLACK_NANOS) {
+      failures.add(name + ": p99 " + p99 + " ns exceeds " + latencyTolerance + "x the baseline of " + latencyBaseline + " ns");
+    }
+  }
+
+  private long budget(String key) {
+    var value = baseline.getProperty(key);
+    if (value == null) throw new IllegalStateException("No baseline for " + key + " in " + BASELINE);
+
+    return Long.parseLong(value);
+  }
+
+  /**
+   * Fails the check if the operation writes anything to stdout or stderr.
+   */
+  private void checkSilent(String name, Supplier<Object> operation) {
+    var out = System.out;
+    var err = System.err;
+    var captured = new ByteArrayOutputStream();
+    var capture = new PrintStream(captured, true);
+
+    System.setOut(capture);
+    System.setErr(capture);
+
+    try {
+      consume(operation.get());
+    } finally {
+      System.setOut(out);
+      System.setErr(err);
+    }
+
+    if (captured.size() > 0) {
+      failures.add(name + ": wrote to stdout/stderr during generation: " + captured);
+    }
+  }
+
+  private long measureAllocatedBytes(Supplier<Object> operation) {
+    long threadId = Thread.currentThread().threadId();
+    long before = threads.getThreadAllocatedBytes(threadId);
+
+    for (int i = 0; i < ALLOCATION_ITERATIONS; i++) consume(operation.get());
+
+    return (threads.getThreadAllocatedBytes(threadId) - before) / ALLOCATION_ITERATIONS;
+  }
+
+  /**
+   * Returns the lowest p99 of several rounds, so a single GC pause or descheduling on a
+   * busy machine does not fail the check.
+   */
+  private long measureP99Nanos(Supplier<Object> operation) {
+    long[] samples = new long[LATENCY_SAMPLES];
+    long best = Long.MAX_VALUE;
+
+    for (int round = 0; round < LATENCY_ROUNDS; round++) {
+      for (int i = 0; i < samples.length; i++) {
+        long start = System.nanoTime();
+        consume(operation.get());
+        samples[i] = System.nanoTime() - start;
+      }
+
+      Arrays.sort(samples);
+      best = Math.min(best, samples[(int) Math.ceil(samples.length * 0.99) - 1]);
+    }
+
+    return best;
+  }
+
+  // Keeps results reachable so the JIT cannot drop the operation.
+  private static volatile Object sink;
+
+  private static void consume(Object result) {
+    sink = result;
+  }
+}
@@ -0,0 +1,425 @@
+package qr;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator measuring throughput and tail latency of the full pipeline, from data to
+ * output bytes, for every combination of version, module size and output format.
+ * <pre>
+ * java -cp out qr.LoadGenerator [--mode closed|open] [--threads platform|virtual]
+ *     [--concurrency n] [--rate ops-per-second] [--duration seconds] [--warmup seconds]
+ *     [--versions 1,5,10] [--module-sizes 1,4] [--formats image,png,pbm,bmp,tiff]
+ *     [--error-correction level]
+ * </pre>
+ * Each worker generates codes through a shared {@link QREngine}, with payloads drawn from a
+ * mix of URLs, alphanumeric references, digits and prose, sized to land in the configured
+ * version. {@code image} stops at the rendered image; the other formats also encode it.
+ * <p>
+ * <b>Closed loop</b> (default) keeps {@code concurrency} requests in flight and reports the
+ * maximum throughput at that concurrency. <b>Open loop</b> issues requests on a fixed
+ * schedule of {@code rate} operations per second, spread over the workers, whatever the
+ * response times; this is how production traffic behaves.
+ * <p>
+ * Latencies are corrected for coordinated omission. In open loop, every latency is taken
+ * from the time the request was scheduled, not from when a backed-up worker got to it. In
+ * closed loop, a response slower than the expected interval (the median service time seen
+ * during warm-up) is recorded along with the responses that would have queued behind it.
+ */
+public final class LoadGenerator {
+
+  private enum Mode {CLOSED, OPEN}
+
+  private enum Format {IMAGE, PNG, PBM, BMP, TIFF}
+
+  private Mode mode = Mode.CLOSED;
+  private boolean virtualThreads;
+  private int concurrency = Runtime.getRuntime().availableProcessors();
+  private double rate = 1_000;
+  private double durationSeconds = 10;
+  private double warmupSeconds = 3;
+  private int[] versions = {1, 5, 10, 20};
+  private int[] moduleSizes = {1, 4};
+  private Format[] formats = Format.values();
+  private ErrorCorrection errorCorrection = ErrorCorrection.MEDIUM;
+
+  public static void main(String[] args) throws Exception {
+    var generator = new LoadGenerator();
+
+    try {
+      generator.parse(args);
+    } catch (RuntimeException e) {
+      System.err.println(e.getMessage());
+      System.err.println("usage: LoadGenerator [--mode closed|open] [--threads platform|virtual] [--concurrency n] [--rate ops/s] "
+          + "[--duration s] [--warmup s] [--versions 1,5] [--module-sizes 1,4] [--formats image,png,pbm,bmp,tiff] [--error-correction level]");
+      System.exit(2);
+    }
+
+    generator.run();
+  }
+
+  private void parse(String[] args) {
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "--mode" -> mode = Mode.valueOf(args[++i].toUpperCase(Locale.ROOT));
+        case "--threads" -> virtualThreads = switch (args[++i]) {
+          case "virtual" -> true;
+          case "platform" -> false;
+          default -> throw new IllegalArgumentException("Unknown thread kind: " + args[i]);
+        };
+        case "--concurrency" -> concurrency = Integer.parseInt(args[++i]);
+        case "--rate" -> rate = Double.parseDouble(args[++i]);
+        case "--duration" -> durationSeconds = Double.parseDouble(args[++i]);
+        case "--warmup" -> warmupSeconds = Double.parseDouble(args[++i]);
+        case "--versions" -> versions = parseInts(args[++i]);
+        case "--module-sizes" -> moduleSizes = parseInts(args[++i]);
+        case "--formats" -> {
+          var names = args[++i].split(",");
+          formats = new Format[names.length];
+          for (int f = 0; f < names.length; f++) formats[f] = Format.valueOf(names[f].trim().toUpperCase(Locale.ROOT));
+        }
+        case "--error-correction" -> errorCorrection = ErrorCorrection.valueOf(args[++i].toUpperCase(Locale.ROOT));
+        default -> throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+      }
+    }
+
+    if (concurrency < 1) throw new IllegalArgumentException("Concurrency must be above 0");
+    if (rate <= 0) throw new IllegalArgumentException("Rate must be above 0");
+  }
+
+  private static int[] parseInts(String list) {
+    var parts = list.split(",");
+    var values = new int[parts.length];
+
+    for (int i = 0; i < parts.length; i++) values[i] = Integer.parseInt(parts[i].trim());
+
+    return values;
+  }
+
+  private void run() throws Exception {
+    System.out.printf("%s loop, %d %s threads%s, %s error correction, %.0fs per configuration%n",
+        mode.name().toLowerCase(Locale.ROOT), concurrency, virtualThreads ? "virtual" : "platform",
+        mode == Mode.OPEN ? String.format(" at %.0f ops/s", rate) : "", errorCorrection, durationSeconds);
+    System.out.printf("%7s %6s %6s %10s %12s %10s %10s %10s %10s%n",
+        "version", "module", "format", "ops", "ops/s", "p50 us", "p99 us", "p999 us", "max us");
+
+    for (int version : versions) {
+      for (int moduleSize : moduleSizes) {
+        for (var format : formats) {
+          runConfiguration(version, moduleSize, format);
+        }
+      }
+    }
+  }
+
+  private void runConfiguration(int version, int moduleSize, Format format) throws Exception {
+    var engine = new QRCodeBuilder()
+        .setErrorCorrection(errorCorrection)
+        .setModuleSize(moduleSize)
+        .buildEngine();
+
+    var workers = new ArrayList<Worker>(concurrency);
+    for (int i = 0; i < concurrency; i++) workers.add(new Worker(i, engine, version, moduleSize, format));
+
+    // Warm-up also yields the expected interval for closed-loop correction
+    runPhase(workers, (long) (warmupSeconds * 1e9), false);
+    var operations = runPhase(workers, (long) (durationSeconds * 1e9), true);
+
+    var merged = new Histogram();
+    long elapsed = 0;
+
+    for (var worker : workers) {
+      merged.add(worker.histogram);
+      elapsed = Math.max(elapsed, worker.elapsedNanos);
+      worker.close();
+    }
+
+    System.out.printf("%7d %6d %6s %10d %12.0f %10.1f %10.1f %10.1f %10.1f%n",
+        version, moduleSize, format.name().toLowerCase(Locale.ROOT), operations, operations / (elapsed / 1e9),
+        merged.quantile(0.5) / 1e3, merged.quantile(0.99) / 1e3, merged.quantile(0.999) / 1e3, merged.max() / 1e3);
+  }
+
+  /**
+   * Runs every worker on its own thread for the given time.
+   *
+   * @return the number of operations completed
+   */
+  private long runPhase(List<Worker> workers, long durationNanos, boolean measure) throws InterruptedException {
+    var threads = new ArrayList<Thread>(workers.size());
+    long start = System.nanoTime();
+    long deadline = start + durationNanos;
+
+    for (var worker : workers) {
+      var builder = virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform();
+      threads.add(builder.name("load-" + worker.id).start(() -> worker.run(start, deadline, measure)));
+    }
+
+    for (var thread : threads) thread.join();
+
+    long operations = 0;
+    for (var worker : workers) {
+      if (worker.failure != null) throw new IllegalStateException("Worker " + worker.id + " failed", worker.failure);
+      operations += worker.operations;
+    }
+
+    return operations;
+  }
+
+  private final class Worker {
+    private final int id;
+    private final QREngine engine;
+    private final int moduleSize;
+    private final Format format;
+    private final String[] payloads;
+    private final SplittableRandom random;
+    private final Histogram histogram = new Histogram();
+    private final FileChannel channel;
+    private final File pngFile;
+
+    private long expectedIntervalNanos;
+    private long operations;
+    private long elapsedNanos;
+    private Throwable failure;
+
+    Worker(int id, QREngine engine, int version, int moduleSize, Format format) throws IOException {
+      this.id = id;
+      this.engine = engine;
+      this.moduleSize = moduleSize;
+      this.format = format;
+      this.random = new SplittableRandom(id * 7919L + version);
+      this.payloads = Payloads.forVersion(version, errorCorrection, random, 256);
+
+      var file = format == Format.IMAGE ? null : Files.createTempFile("qr-load", "." + format.name().toLowerCase(Locale.ROOT));
+      if (file != null) file.toFile().deleteOnExit();
+
+      // PNG goes through ImageIO.write(image, "PNG", File) like the command line tool, which
+      // writes to the file directly; a stream target would add ImageIO's temp file cache
+      this.pngFile = format == Format.PNG ? file.toFile() : null;
+      this.channel = file == null || format == Format.PNG
+          ? null
+          : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    void run(long start, long deadline, boolean measure) {
+      histogram.reset();
+      operations = 0;
+
+      try {
+        if (mode == Mode.OPEN) runOpen(start, deadline, measure);
+        else runClosed(deadline, measure);
+      } catch (Throwable e) {
+        failure = e;
+      }
+
+      elapsedNanos = System.nanoTime() - start;
+    }
+
+    private void runOpen(long start, long deadline, boolean measure) throws IOException {
+      double interval = 1e9 * concurrency / rate;
+
+      // Workers are staggered so that the combined schedule is evenly spaced
+      for (long i = 0; ; i++) {
+        long scheduled = start + (long) (interval * (i + (double) id / concurrency));
+        if (scheduled >= deadline) return;
+
+        long wait = scheduled - System.nanoTime();
+        if (wait > 0) LockSupport.parkNanos(wait);
+
+        generate();
+        if (measure) histogram.record(System.nanoTime() - scheduled);
+        operations++;
+      }
+    }
+
+    private void runClosed(long deadline, boolean measure) throws IOException {
+      for (long started = System.nanoTime(); started < deadline; ) {
+        generate();
+        long finished = System.nanoTime();
+
+        if (measure) histogram.recordCorrected(finished - started, expectedIntervalNanos);
+        else histogram.record(finished - started);
+
+        operations++;
+        started = finished;
+      }
+
+      if (!measure) expectedIntervalNanos = histogram.quantile(0.5);
+    }
+
+    private void generate() throws IOException {
+      var data = payloads[random.nextInt(payloads.length)];
+
+      switch (format) {
+        case IMAGE -> sink = engine.render(data);
+        case PNG -> ImageIO.write(engine.render(data), "PNG", pngFile);
+        case PBM -> BitmapExporter.writePbm(engine.encode(data), moduleSize, rewind());
+        case BMP -> BitmapExporter.writeBmp(engine.encode(data), moduleSize, rewind());
+        case TIFF -> BitmapExporter.writeTiff(engine.encode(data), moduleSize, rewind());
+      }
+    }
+
+    private FileChannel rewind() throws IOException {
+      return channel.truncate(0).position(0);
+    }
+
+    void close() {
+      try {
+        if (channel != null) channel.close();
+        if (pngFile != null) Files.deleteIfExists(pngFile.toPath());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  // Keeps rendered images reachable so the JIT cannot drop the work.
+  private static volatile Object sink;
+
+  /**
+   * Realistic payloads of a given version.
+   */
+  private static final class Payloads {
+    private static final String ALPHANUMERIC = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:";
+    private static final String[] WORDS = {"the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "order", "shipped", "ticket", "gate"};
+
+    /**
+     * The version is chosen by length alone, so payloads are sized between the capacity of
+     * the previous version and that of the requested one.
+     */
+    static String[] forVersion(int version, ErrorCorrection errorCorrection, SplittableRandom random, int count) {
+      int min = version == 1 ? 1 : Version.getCapacityForVersion(version - 1, errorCorrection);
+      int max = Version.getCapacityForVersion(version, errorCorrection) - 1;
+      var payloads = new String[count];
+
+      for (int i = 0; i < count; i++) {
+        int length = random.nextInt(min, max + 1);
+
+        payloads[i] = switch (i % 4) {
+          case 0 -> url(length, random);
+          case 1 -> fromAlphabet(length, ALPHANUMERIC, random);
+          case 2 -> fromAlphabet(length, "0123456789", random);
+          default -> prose(length, random);
+        };
+      }
+
+      return payloads;
+    }
+
+    private static String url(int length, SplittableRandom random) {
+      var url = new StringBuilder("https://example.com/p/");
+      while (url.length() < length) url.append((char) ('a' + random.nextInt(26)));
+
+      return url.substring(0, length);
+    }
+
+    private static String fromAlphabet(int length, String alphabet, SplittableRandom random) {
+      var text = new StringBuilder(length);
+      while (text.length() < length) text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+
+      return text.toString();
+    }
+
+    private static String prose(int length, SplittableRandom random) {
+      var text = new StringBuilder(length + 8);
+      while (text.length() < length) text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+
+      return text.substring(0, length);
+    }
+  }
+
+  /**
+   * Log-linear latency histogram: values are kept exactly below 64 ns and to within 1/32 of
+   * their magnitude above. Each worker owns one; they are merged after a run.
+   */
+  static final class Histogram {
+    private static final int SUB_BUCKETS = 32;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+
+    private final long[] counts = new long[LINEAR_LIMIT + (63 - 6) * SUB_BUCKETS];
+    private long total;
+    private long max;
+
+    void record(long nanos) {
+      if (nanos < 0) nanos = 0;
+
+      counts[index(nanos)]++;
+      total++;
+      max = Math.max(max, nanos);
+    }
+
+    /**
+     * Records the value together with the samples a closed-loop client missed while
+     * waiting for it: one for every expected interval it exceeded.
+     */
+    void recordCorrected(long nanos, long expectedIntervalNanos) {
+      record(nanos);
+      if (expectedIntervalNanos <= 0) return;
+
+      for (long missed = nanos - expectedIntervalNanos; missed >= expectedIntervalNanos; missed -= expectedIntervalNanos) {
+        record(missed);
+      }
+    }
+
+    void add(Histogram other) {
+      for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+
+      total += other.total;
+      max = Math.max(max, other.max);
+    }
+
+    void reset() {
+      Arrays.fill(counts, 0);
+      total = max = 0;
+    }
+
+    long max() {
+      return max;
+    }
+
+    /**
+     * @return the upper bound of the bucket holding the quantile, capped at the maximum
+     */
+    long quantile(double quantile) {
+      if (total == 0) return 0;
+
+      long rank = Math.max(1, (long) Math.ceil(quantile * total)), seen = 0;
+
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) return Math.min(upperBound(i), max);
+      }
+
+      return max;
+    }
+
+    private static int index(long value) {
+      if (value < LINEAR_LIMIT) return (int) value;
+
+      int exponent = 63 - Long.numberOfLeadingZeros(value);
+      int shift = exponent - 5;
+
+      return LINEAR_LIMIT + (exponent - 6) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long upperBound(int index) {
+      if (index < LINEAR_LIMIT) return index;
+
+      int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + 6;
+      int sub = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+      int shift = exponent - 5;
+
+      return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+  }
+}